@@ -0,0 +1,40 @@
+package simpal;
+
+import simpal.errors.ErrorReporter;
+import simpal.lang.Statement;
+import simpal.vm.VMProgram;
+
+import java.util.List;
+
+/**
+ * Program that is scanned, parsed, resolved and optimized once by {@link SimPalEngine#compile(CharSequence,
+ * ErrorReporter)} and then run any number of times by any number of contexts of that engine, also from different
+ * threads at the same time. Whatever a run changes, its globals, frames and output, lives in the context running it.
+ * The executed tree is a copy the parsed statements never see, the only thing a run changes in it is the node a binary
+ * expression is specialized to, which every run can use, see {@link simpal.interpreter.BinaryNode}.
+ */
+public final class CompiledProgram {
+    private final SimPalEngine engine;
+    // Executed tree, also the tree the bytecode was compiled from
+    private final List<Statement> statements;
+    // Only compiled when the engine runs programs on the VM
+    private final VMProgram bytecode;
+
+    CompiledProgram(SimPalEngine engine, List<Statement> statements, VMProgram bytecode) {
+        this.engine = engine;
+        this.statements = List.copyOf(statements);
+        this.bytecode = bytecode;
+    }
+
+    SimPalEngine engine() {
+        return engine;
+    }
+
+    List<Statement> statements() {
+        return statements;
+    }
+
+    VMProgram bytecode() {
+        return bytecode;
+    }
+}
@@ -0,0 +1,208 @@
+package simpal;
+
+import simpal.errors.ErrorReporter;
+import simpal.errors.ScriptInterruptedError;
+import simpal.output.StringSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs submitted programs, each in a {@link SimPalContext} of its own on a virtual thread, so a program waiting on
+ * its output does not hold up a platform thread. At most a fixed number of programs run at once, the rest wait for a
+ * turn without using a platform thread either. A program that runs past its deadline is stopped by interrupting its
+ * thread. Every source is compiled once, see {@link CompiledProgram}, and the result is shared by every run of it.
+ */
+public class ScriptExecutor implements AutoCloseable {
+    // Sources whose compiled program is kept, further sources are compiled on every run
+    private static final int MAX_CACHED_PROGRAMS = 1024;
+
+    private final SimPalEngine engine;
+    private final int maxConcurrentScripts;
+    private final Semaphore running;
+    // 0 when programs have no deadline
+    private final long deadlineNanos;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService deadlines;
+    private final ConcurrentHashMap<String, CompiledProgram> programs = new ConcurrentHashMap<>();
+
+    private final long createdAt = System.nanoTime();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param engine               engine every program is run with
+     * @param maxConcurrentScripts number of programs that may run at the same time
+     * @param deadline             time a program may run, counted from when it starts, null for no limit
+     */
+    public ScriptExecutor(SimPalEngine engine, int maxConcurrentScripts, Duration deadline) {
+        if (maxConcurrentScripts < 1) throw new IllegalArgumentException("At least one script has to be able to run.");
+        this.engine = engine;
+        this.maxConcurrentScripts = maxConcurrentScripts;
+        this.running = new Semaphore(maxConcurrentScripts);
+        this.deadlineNanos = deadline != null ? deadline.toNanos() : 0;
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "simpal-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the program on a virtual thread of its own once there is room for it
+     *
+     * @param source source code of the program
+     * @return result of the program, available when it has finished, or the error the run could not recover from
+     */
+    public CompletableFuture<ScriptResult> submit(String source) {
+        long submittedAt = System.nanoTime();
+        submitted.increment();
+        CompletableFuture<ScriptResult> result = new CompletableFuture<>();
+        threads.execute(() -> {
+            try {
+                result.complete(run(source, submittedAt));
+            } catch (Throwable e) {
+                // Errors no program recovers from, like running out of memory, are passed on to the caller
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private ScriptResult run(String source, long submittedAt) {
+        StringSink output = new StringSink();
+        ByteArrayOutputStream errorText = new ByteArrayOutputStream();
+        PrintStream errorStream = new PrintStream(errorText, true, StandardCharsets.UTF_8);
+        ErrorReporter errors = new ErrorReporter(errorStream);
+
+        // Stays a crash if an error nothing here catches ends the run, it is still counted before it is passed on
+        ScriptResult.Status status = ScriptResult.Status.CRASHED;
+        Future<?> deadline = null;
+        long latency;
+        running.acquireUninterruptibly();
+        try {
+            // The thread only runs this program, an interrupt that comes in after it finished does no harm
+            Thread thread = Thread.currentThread();
+            if (deadlineNanos > 0) {
+                deadline = deadlines.schedule(thread::interrupt, deadlineNanos, TimeUnit.NANOSECONDS);
+            }
+
+            CompiledProgram program = program(source, errors);
+            if (program == null) {
+                status = ScriptResult.Status.ERROR;
+            } else if (engine.newContext(output, errors).run(program)) {
+                status = ScriptResult.Status.COMPLETED;
+            } else {
+                status = ScriptResult.Status.RUNTIME_ERROR;
+            }
+        } catch (ScriptInterruptedError e) {
+            status = ScriptResult.Status.TIMED_OUT;
+        } catch (RuntimeException | StackOverflowError e) {
+            errorStream.println(e);
+            status = ScriptResult.Status.CRASHED;
+        } finally {
+            if (deadline != null) deadline.cancel(false);
+            running.release();
+            latency = System.nanoTime() - submittedAt;
+            record(status, latency);
+        }
+
+        return new ScriptResult(status, output.toString(), errorText.toString(StandardCharsets.UTF_8), latency);
+    }
+
+    /**
+     * Compiled program of the source, shared with every other run of the same source
+     *
+     * @return program or null if the source has errors, they are reported every time it is submitted
+     */
+    private CompiledProgram program(String source, ErrorReporter errors) {
+        CompiledProgram program = programs.get(source);
+        if (program != null) return program;
+
+        program = engine.compile(source, errors);
+        if (program != null && programs.size() < MAX_CACHED_PROGRAMS) programs.putIfAbsent(source, program);
+        return program;
+    }
+
+    private void record(ScriptResult.Status status, long latencyNanos) {
+        finished.increment();
+        if (status == ScriptResult.Status.TIMED_OUT) {
+            timedOut.increment();
+        } else if (status != ScriptResult.Status.COMPLETED) {
+            failed.increment();
+        }
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    public long submittedScripts() {
+        return submitted.sum();
+    }
+
+    /**
+     * Number of programs that have a result, whatever their status
+     */
+    public long finishedScripts() {
+        return finished.sum();
+    }
+
+    /**
+     * Number of programs that had errors or crashed
+     */
+    public long failedScripts() {
+        return failed.sum();
+    }
+
+    public long timedOutScripts() {
+        return timedOut.sum();
+    }
+
+    public int runningScripts() {
+        return maxConcurrentScripts - running.availablePermits();
+    }
+
+    /**
+     * Programs finished per second since the executor was created
+     */
+    public double throughputPerSecond() {
+        double seconds = (System.nanoTime() - createdAt) / 1e9;
+        return seconds > 0 ? finished.sum() / seconds : 0;
+    }
+
+    /**
+     * Average time from submitting a program to its result, waiting for a turn included
+     */
+    public long averageLatencyNanos() {
+        long count = finished.sum();
+        return count > 0 ? totalLatencyNanos.sum() / count : 0;
+    }
+
+    public long maxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * Waits for every submitted program to finish, no program can be submitted afterwards
+     */
+    @Override
+    public void close() {
+        threads.close();
+        deadlines.shutdownNow();
+    }
+}
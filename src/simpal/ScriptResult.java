@@ -0,0 +1,35 @@
+package simpal;
+
+/**
+ * Outcome of a program run by a {@link ScriptExecutor}
+ */
+public final class ScriptResult {
+
+    public enum Status {
+        // Ran to the end without errors
+        COMPLETED,
+        // Not run because scanning, parsing or resolving reported errors
+        ERROR,
+        // Stopped by a runtime error
+        RUNTIME_ERROR,
+        // Stopped because it ran past its deadline
+        TIMED_OUT,
+        // Stopped by an exception that is not an error of the program, such as a division by zero
+        CRASHED
+    }
+
+    public final Status status;
+    // Everything the program printed, also when it did not complete
+    public final String output;
+    // Reported errors as they would be printed on the console
+    public final String errors;
+    // Time from submitting the program to its result
+    public final long latencyNanos;
+
+    ScriptResult(Status status, String output, String errors, long latencyNanos) {
+        this.status = status;
+        this.output = output;
+        this.errors = errors;
+        this.latencyNanos = latencyNanos;
+    }
+}
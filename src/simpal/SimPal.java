@@ -1,160 +1,262 @@
 package simpal;
 
-import simpal.errors.SimPalRuntimeError;
-import simpal.interpreter.Interpreter;
-import simpal.interpreter.Resolver;
-import simpal.lang.Statement;
-import simpal.parser.Parser;
-import simpal.scanner.Scanner;
-import simpal.token.Token;
-import simpal.token.TokenType;
+import simpal.cache.AstCache;
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.ExecutionLimits;
+import simpal.output.ConsoleSink;
+import simpal.output.FileSink;
+import simpal.output.OutputSink;
+import simpal.profiler.Profiler;
+import simpal.scanner.AsciiCharSequence;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Command line of SimPal, runs a script or the prompt in a {@link SimPalContext}
+ */
 public class SimPal {
 
-    private static final Interpreter interpreter = new Interpreter();
-
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static SimPalEngine.Backend backend = SimPalEngine.Backend.TREE;
+    // Lines after which file output is flushed, 0 to flush only when the buffer is full or the run ends
+    private static int flushEveryLines = 0;
+    // Resolved programs of earlier runs, only used when a cache directory is given with --ast-cache
+    private static AstCache astCache;
+    // Scan the file while parsing it instead of reading it into memory first, set with --stream
+    private static boolean streamSource = false;
+    // Also fold constants and drop dead branches when simplifying the program, turned off with --no-optimize
+    private static boolean optimize = true;
+    // Limits of the run set with --max-steps, --max-call-depth, --max-time-ms and --max-string-chars, 0 for none
+    private static long maxSteps = 0;
+    private static long maxCallDepth = 0;
+    private static long maxTimeMillis = 0;
+    private static long maxStringChars = 0;
+    // File the collapsed stacks are written to when the program is profiled with --profile, null when it is not
+    private static String profileFile;
+    private static Profiler profiler;
 
     /**
      * Main function that executes code for file ( if provided in params ) or from terminal input
      *
-     * @param args (optional) file name to executed
+     * @param args (optional) options, file name to executed and file name for the output
      * @throws IOException if any input error occurs
      */
     public static void main(String[] args) throws IOException {
-        if (args.length > 2) {
-            System.out.println("Usage: SimPal.SimPal [script]");
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else if (args.length == 2) {
-            runWithOutputFile(args[0], args[1]);
-        } else {
-            runPrompt();
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--engine=vm")) {
+                backend = SimPalEngine.Backend.VM;
+            } else if (arg.equals("--engine=tree")) {
+                backend = SimPalEngine.Backend.TREE;
+            } else if (arg.startsWith("--flush-lines=")) {
+                flushEveryLines = parseCount(arg.substring("--flush-lines=".length()));
+                if (flushEveryLines < 0) {
+                    usage();
+                    return;
+                }
+            } else if (arg.equals("--stream")) {
+                streamSource = true;
+            } else if (arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if (arg.startsWith("--ast-cache=")) {
+                astCache = new AstCache(arg.substring("--ast-cache=".length()));
+            } else if (arg.equals("--profile")) {
+                profileFile = "profile.collapsed";
+            } else if (arg.startsWith("--profile=")) {
+                profileFile = arg.substring("--profile=".length());
+            } else if (arg.startsWith("--max-")) {
+                if (!parseLimit(arg)) {
+                    usage();
+                    return;
+                }
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                files.add(arg);
+            }
         }
-    }
 
-    /**
-     * Runs the code using the given file path from file bytes attempts to execute  if file argument is given
-     *
-     * @param inputFilePath relative path of the file which has code to be executed
-     * @throws IOException if file is invalid or readAllBytes fails
-     */
-    private static void runFile(String inputFilePath) throws IOException {
-        byte[] fileBytes = Files.readAllBytes(Paths.get(inputFilePath));
-        run(new String(fileBytes, Charset.defaultCharset()));
+        ExecutionLimits limits = new ExecutionLimits(maxSteps, (int) maxCallDepth,
+                maxTimeMillis > 0 ? Duration.ofMillis(maxTimeMillis) : null, maxStringChars);
+        SimPalEngine engine = new SimPalEngine(backend, optimize, astCache, limits);
+        if (profileFile != null) {
+            if (backend != SimPalEngine.Backend.TREE) {
+                System.out.println("Only the tree walking interpreter can be profiled, --profile cannot be used with --engine=vm");
+                return;
+            }
+            profiler = new Profiler();
+        }
 
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (files.size() > 2) {
+            usage();
+        } else if (files.size() == 1) {
+            runFile(engine, files.get(0), new ConsoleSink(System.out));
+        } else if (files.size() == 2) {
+            // Opening the sink clears the output file, it stays open for the whole run
+            runFile(engine, files.get(0), new FileSink(files.get(1), flushEveryLines));
+        } else {
+            runPrompt(engine);
+        }
     }
 
-    private static void runWithOutputFile(String inputFilePath, String outPutFilePath) throws IOException {
-        interpreter.outputFilePth = outPutFilePath;
-
-        // Clearing  output file
-        PrintWriter writer = new PrintWriter(outPutFilePath);
-        writer.print("");
-        writer.close();
+    private static void usage() {
+        System.out.println("Usage: SimPal.SimPal [--engine=tree|vm] [--flush-lines=N] [--ast-cache=directory] [--stream] [--no-optimize] [--max-steps=N] [--max-call-depth=N] [--max-time-ms=N] [--max-string-chars=N] [--profile[=file]] [script] [output file]");
+    }
 
-        runFile(inputFilePath);
+    private static int parseCount(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
-     * Runs the code that is inputted in the terminal, executed when no file path is provided in the argument
+     * Sets the execution limit named by the option
      *
-     * @throws IOException when input error occurs
+     * @param arg option of the form --max-name=N
+     * @return false if the option is unknown or N is not a count
      */
-    private static void runPrompt() throws IOException {
-        InputStreamReader inputStreamReader = new InputStreamReader(System.in);
-        BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-        for (; ; ) {
-            System.out.print("> ");
-            String line = bufferedReader.readLine();
-            if (line == null) break;
-            run(line);
-            hadError = false;
+    private static boolean parseLimit(String arg) {
+        int equals = arg.indexOf('=');
+        if (equals < 0) return false;
+        long value;
+        try {
+            value = Long.parseLong(arg.substring(equals + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (value < 0) return false;
+
+        switch (arg.substring(0, equals)) {
+            case "--max-steps":
+                maxSteps = value;
+                return true;
+            case "--max-call-depth":
+                if (value > Integer.MAX_VALUE) return false;
+                maxCallDepth = value;
+                return true;
+            case "--max-time-ms":
+                maxTimeMillis = value;
+                return true;
+            case "--max-string-chars":
+                maxStringChars = value;
+                return true;
+            default:
+                return false;
         }
     }
 
     /**
-     * Runs the input code, first tokenizes it using {@link Scanner}, parses it using {@link Parser} and then interprets it using {@link Interpreter}
+     * Runs the code using the given file path from file bytes attempts to execute  if file argument is given
      *
-     * @param source code that is to be executed, basically the source code
+     * @param engine        engine the file is run with
+     * @param inputFilePath relative path of the file which has code to be executed
+     * @param outputSink    destination of the output of the program
+     * @throws IOException if file is invalid or cannot be read
      */
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        List<Statement> statements = parser.parse();
-
-        if (hadError) return;
-
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-
-        // Stop if there was a resolution error.
-        if (hadError) return;
+    private static void runFile(SimPalEngine engine, String inputFilePath, OutputSink outputSink) throws IOException {
+        SimPalContext context = newContext(engine, outputSink);
+        if (streamSource) {
+            // Malformed input is replaced like readSource does, instead of failing as Files.newBufferedReader would
+            try (Reader reader = new BufferedReader(new InputStreamReader(
+                    Files.newInputStream(Paths.get(inputFilePath)), Charset.defaultCharset()))) {
+                context.run(reader);
+            }
+        } else {
+            context.run(readSource(inputFilePath));
+        }
+        context.close();
+        finishProfile();
 
-        interpreter.interpret(statements);
+        if (context.errors().hadError()) System.exit(65);
+        if (context.errors().hadRuntimeError()) System.exit(70);
     }
 
-    // ToDo: Add an abstraction like errorHandler or errorReporter
-
     /**
-     * Displays error details with line number
+     * Maps the file into memory, an ASCII file is scanned straight from the mapped bytes and any other file is decoded
+     * from them once, instead of being copied into a byte array and then into a string
      *
-     * @param lineNumber   line number on which error has occurred
-     * @param errorMessage message that needs to be displayed
+     * @param inputFilePath path of the source file
+     * @return source code of the file
+     * @throws IOException if the file cannot be read
      */
+    private static CharSequence readSource(String inputFilePath) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("File is too large: " + inputFilePath);
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        Charset charset = Charset.defaultCharset();
+        if (isAsciiCompatible(charset) && AsciiCharSequence.isAscii(bytes)) {
+            return new AsciiCharSequence(bytes);
+        }
+        return charset.decode(bytes);
+    }
 
-    public static void error(int lineNumber, String errorMessage) {
-        report(lineNumber, "", errorMessage);
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
     }
 
     /**
-     * Displays error using token line and error message
+     * Runs the code that is inputted in the terminal, executed when no file path is provided in the argument, every
+     * line runs in the same context so it sees what the lines before it declared
      *
-     * @param token   token at which error has occurred, provides line number
-     * @param message error message to be displayed
+     * @param engine engine the lines are run with
+     * @throws IOException when input error occurs
      */
-    public static void error(Token token, String message) {
-        if (token.tokenType == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    private static void runPrompt(SimPalEngine engine) throws IOException {
+        SimPalContext context = newContext(engine, new ConsoleSink(System.out));
+        InputStreamReader inputStreamReader = new InputStreamReader(System.in);
+        BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+        for (; ; ) {
+            System.out.print("> ");
+            String line = bufferedReader.readLine();
+            if (line == null) break;
+            context.run(line);
         }
+        finishProfile();
     }
 
     /**
-     * Prints on terminal error details
+     * Creates the context programs are run in, profiled when --profile is given
      *
-     * @param lineNumber   line number of source code where error has occurred
-     * @param where        location of error in the line ( like in the end or lexeme location )
-     * @param errorMessage detailed message of error
+     * @param engine     engine of the context
+     * @param outputSink destination of the output of the programs
+     * @return new context reporting errors on the console
      */
-    private static void report(int lineNumber, String where, String errorMessage) {
-        System.err.println(
-                "[line " + lineNumber + "] Error" + where + ": " + errorMessage);
-        hadError = true;
+    private static SimPalContext newContext(SimPalEngine engine, OutputSink outputSink) {
+        ErrorReporter errors = new ErrorReporter(System.err);
+        if (profiler == null) return engine.newContext(outputSink, errors);
+
+        profiler.start();
+        return engine.newContext(outputSink, errors, profiler);
     }
 
     /**
-     * Prints any runtime error that might have occurred during execution
+     * Stops the profiler, writes the collapsed stacks to the profile file and prints the summary on the error stream
      *
-     * @param simPalRuntimeError any runtime error that might have occurred
+     * @throws IOException if the profile file cannot be written
      */
-    public static void runtimeError(SimPalRuntimeError simPalRuntimeError) {
-        System.err.println(simPalRuntimeError.getMessage() + "\n[line " + simPalRuntimeError.token.line + "]");
-        hadRuntimeError = true;
+    private static void finishProfile() throws IOException {
+        if (profiler == null) return;
+        profiler.stop();
+        profiler.writeCollapsedStacks(Paths.get(profileFile));
+        profiler.printSummary(System.err);
     }
-}
\ No newline at end of file
+}
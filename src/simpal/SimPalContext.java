@@ -0,0 +1,111 @@
+package simpal;
+
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.Interpreter;
+import simpal.lang.Statement;
+import simpal.output.OutputSink;
+import simpal.profiler.Profiler;
+import simpal.profiler.ProfilingInterpreter;
+import simpal.vm.VM;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Everything one SimPal program changes while it runs: its globals, where it prints and where its errors go. Programs
+ * run in the same context one after another share their globals, like the lines typed in the prompt. A context is not
+ * meant to be used by two threads at once, contexts of the same engine can run at the same time.
+ */
+public class SimPalContext {
+    private final SimPalEngine engine;
+    private final OutputSink outputSink;
+    private final ErrorReporter errors;
+    // Only the one selected by the backend of the engine is created
+    private final Interpreter interpreter;
+    private final VM vm;
+
+    SimPalContext(SimPalEngine engine, OutputSink outputSink, ErrorReporter errors, Profiler profiler) {
+        this.engine = engine;
+        this.outputSink = outputSink;
+        this.errors = errors;
+        if (engine.backend() == SimPalEngine.Backend.VM) {
+            this.interpreter = null;
+            this.vm = new VM(outputSink, errors, engine.limits());
+        } else {
+            this.interpreter = profiler != null
+                    ? new ProfilingInterpreter(outputSink, errors, engine.limits(), profiler)
+                    : new Interpreter(outputSink, errors, engine.limits());
+            this.vm = null;
+        }
+    }
+
+    public OutputSink outputSink() {
+        return outputSink;
+    }
+
+    public ErrorReporter errors() {
+        return errors;
+    }
+
+    /**
+     * Runs the source code, errors of earlier runs are forgotten first
+     *
+     * @param source source code of the program
+     * @return true if the program was run without any error
+     */
+    public boolean run(CharSequence source) {
+        errors.clear();
+        CompiledProgram program = engine.compile(source, errors);
+        if (program != null) execute(program);
+        return !errors.hadError() && !errors.hadRuntimeError();
+    }
+
+    /**
+     * Runs the source code while it is read, see {@link SimPalEngine#parse(Reader, ErrorReporter)}
+     *
+     * @param reader source code of the program, not closed
+     * @return true if the program was run without any error
+     */
+    public boolean run(Reader reader) {
+        errors.clear();
+        List<Statement> statements = engine.parse(reader, errors);
+        CompiledProgram program = statements != null ? engine.compile(statements, errors) : null;
+        if (program != null) execute(program);
+        return !errors.hadError() && !errors.hadRuntimeError();
+    }
+
+    /**
+     * Runs a program compiled by the engine of this context, errors of earlier runs are forgotten first
+     *
+     * @param program compiled program, may be run by other contexts at the same time
+     * @return true if the program was run without a runtime error
+     */
+    public boolean run(CompiledProgram program) {
+        if (program.engine() != engine) {
+            throw new IllegalArgumentException("The program was compiled by a different engine.");
+        }
+        errors.clear();
+        execute(program);
+        return !errors.hadRuntimeError();
+    }
+
+    private void execute(CompiledProgram program) {
+        try {
+            if (vm != null) {
+                vm.interpret(program.bytecode());
+            } else {
+                interpreter.interpret(program.statements());
+            }
+        } finally {
+            // Also reached when the program crashes, so everything printed before it is kept
+            outputSink.flush();
+        }
+    }
+
+    /**
+     * Closes the output sink, the context cannot run anything afterwards
+     */
+    public void close() {
+        outputSink.close();
+    }
+}
@@ -0,0 +1,200 @@
+package simpal;
+
+import simpal.cache.AstCache;
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.ExecutionLimits;
+import simpal.interpreter.Optimizer;
+import simpal.interpreter.Resolver;
+import simpal.interpreter.Simplifier;
+import simpal.lang.Statement;
+import simpal.output.OutputSink;
+import simpal.parser.Parser;
+import simpal.profiler.Profiler;
+import simpal.scanner.Scanner;
+import simpal.token.Token;
+import simpal.vm.VMProgram;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Entry point for running SimPal programs from Java. The engine holds the settings every program is run with and
+ * nothing that changes while one runs, so a single engine can be shared by any number of threads. Programs run in a
+ * {@link SimPalContext} created by the engine, which has its own globals, output and errors and is used by one thread
+ * at a time.
+ */
+public class SimPalEngine {
+
+    /**
+     * What executes the resolved program
+     */
+    public enum Backend {
+        // Tree walking interpreter
+        TREE,
+        // Bytecode compiler and stack based virtual machine
+        VM
+    }
+
+    private final Backend backend;
+    private final boolean optimize;
+    private final AstCache astCache;
+    private final ExecutionLimits limits;
+
+    /**
+     * Engine running programs with the tree walking interpreter, optimized, without an AST cache and without limits
+     */
+    public SimPalEngine() {
+        this(Backend.TREE, true, null);
+    }
+
+    /**
+     * @param backend  what executes the programs
+     * @param optimize whether constants are folded and dead branches dropped before a program runs
+     * @param astCache cache of resolved programs, null to always parse the source
+     */
+    public SimPalEngine(Backend backend, boolean optimize, AstCache astCache) {
+        this(backend, optimize, astCache, ExecutionLimits.NONE);
+    }
+
+    /**
+     * @param backend  what executes the programs
+     * @param optimize whether constants are folded and dead branches dropped before a program runs
+     * @param astCache cache of resolved programs, null to always parse the source
+     * @param limits   limits every run of a program is given, counted per run and not per context
+     */
+    public SimPalEngine(Backend backend, boolean optimize, AstCache astCache, ExecutionLimits limits) {
+        this.backend = backend;
+        this.optimize = optimize;
+        this.astCache = astCache;
+        this.limits = limits;
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    public ExecutionLimits limits() {
+        return limits;
+    }
+
+    /**
+     * Creates a context whose globals start out empty, apart from the native functions
+     *
+     * @param outputSink destination of print statements of the context
+     * @param errors     reporter of every error of the context
+     * @return new context
+     */
+    public SimPalContext newContext(OutputSink outputSink, ErrorReporter errors) {
+        return new SimPalContext(this, outputSink, errors, null);
+    }
+
+    /**
+     * Creates a context whose runs are recorded by a profiler, only the tree walking interpreter can be profiled
+     *
+     * @param outputSink destination of print statements of the context
+     * @param errors     reporter of every error of the context
+     * @param profiler   profiler of the runs, started and stopped by the caller
+     * @return new context
+     */
+    public SimPalContext newContext(OutputSink outputSink, ErrorReporter errors, Profiler profiler) {
+        if (backend != Backend.TREE) {
+            throw new IllegalArgumentException("Only the tree walking interpreter can be profiled.");
+        }
+        return new SimPalContext(this, outputSink, errors, profiler);
+    }
+
+    /**
+     * Scans, parses, resolves and optimizes the source once, so it can be run by many contexts without repeating any
+     * of it
+     *
+     * @param source source code of the program
+     * @param errors reporter of the errors in the source
+     * @return compiled program or null if an error was reported
+     */
+    public CompiledProgram compile(CharSequence source, ErrorReporter errors) {
+        List<Statement> statements = parse(source, errors);
+        return statements != null ? compile(statements, errors) : null;
+    }
+
+    /**
+     * Optimizes resolved statements and compiles them to bytecode if the backend needs it, the resolved statements
+     * are left as they are
+     *
+     * @param statements resolved program
+     * @param errors     reporter of the bytecode limits the program exceeds
+     * @return compiled program or null if an error was reported
+     */
+    CompiledProgram compile(List<Statement> statements, ErrorReporter errors) {
+        List<Statement> prepared = prepare(statements);
+        VMProgram bytecode = null;
+        if (backend == Backend.VM) {
+            bytecode = VMProgram.compile(prepared, errors);
+            if (bytecode == null) return null;
+        }
+        return new CompiledProgram(this, prepared, bytecode);
+    }
+
+    /**
+     * Scans, parses and resolves the source, or loads it from the AST cache
+     *
+     * @param source source code of the program
+     * @param errors reporter of the errors in the source
+     * @return resolved statements or null if an error was reported
+     */
+    List<Statement> parse(CharSequence source, ErrorReporter errors) {
+        List<Statement> statements = astCache != null ? astCache.load(source) : null;
+        if (statements != null) return statements;
+
+        int errorsBefore = errors.errorCount();
+        Scanner scanner = new Scanner(source, errors);
+        List<Token> tokens = scanner.scanTokens();
+
+        Parser parser = new Parser(tokens, errors);
+        statements = resolve(parser.parse(), errors, errorsBefore);
+        if (statements != null && astCache != null) astCache.store(source, statements);
+        return statements;
+    }
+
+    /**
+     * Scans the source while it is parsed instead of reading it into memory first, errors of scanning and parsing are
+     * then reported in the order they appear in the source
+     *
+     * @param reader source code of the program, not closed
+     * @param errors reporter of the errors in the source
+     * @return resolved statements or null if an error was reported
+     */
+    List<Statement> parse(Reader reader, ErrorReporter errors) {
+        int errorsBefore = errors.errorCount();
+        return resolve(new Parser(new Scanner(reader, errors), errors).parse(), errors, errorsBefore);
+    }
+
+    /**
+     * Resolves parsed statements
+     *
+     * @param statements   parsed program
+     * @param errors       reporter of the errors in the program
+     * @param errorsBefore error count of the reporter before the program was scanned
+     * @return the same statements or null if an error was reported while scanning, parsing or resolving
+     */
+    private List<Statement> resolve(List<Statement> statements, ErrorReporter errors, int errorsBefore) {
+        if (errors.errorCount() != errorsBefore) return null;
+
+        Resolver resolver = new Resolver(errors);
+        resolver.resolve(statements);
+
+        // Stop if there was a resolution error.
+        if (errors.errorCount() != errorsBefore) return null;
+        return statements;
+    }
+
+    /**
+     * Turns a resolved program into the tree that is executed, the resolved program is left as it is
+     *
+     * @param statements resolved program
+     * @return program to execute
+     */
+    private List<Statement> prepare(List<Statement> statements) {
+        Simplifier simplifier = optimize ? new Optimizer(limits) : new Simplifier();
+        return simplifier.simplify(statements);
+    }
+}
@@ -0,0 +1,94 @@
+package simpal.cache;
+
+import simpal.lang.Statement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Keeps resolved programs on disk keyed by the hash of their source, so running an unchanged script again can skip
+ * scanning, parsing and resolving. The cache is only an optimization, a file that is missing, of another format
+ * version or unreadable is treated as a miss and failing to write one is ignored.
+ */
+public class AstCache {
+    private static final String EXTENSION = ".ast";
+
+    private final Path directory;
+
+    /**
+     * @param directory directory the cached programs are kept in, created when the first program is stored
+     */
+    public AstCache(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Looks up the resolved program of the source
+     *
+     * @param source source code of the program
+     * @return resolved statements or null if the source has not been cached
+     */
+    public List<Statement> load(CharSequence source) {
+        Path file = fileFor(source);
+        if (!Files.isRegularFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != AstFormat.MAGIC || in.readInt() != AstFormat.VERSION) return null;
+            return new AstReader(in).readProgram();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a program that was resolved without errors
+     *
+     * @param source     source code of the program
+     * @param statements resolved statements of the source, before they were executed
+     */
+    public void store(CharSequence source, List<Statement> statements) {
+        Path file = fileFor(source);
+        try {
+            Files.createDirectories(directory);
+            // Written next to its final name and moved there so a concurrent run never reads half a file
+            Path temporary = Files.createTempFile(directory, "simpal", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    out.writeInt(AstFormat.MAGIC);
+                    out.writeInt(AstFormat.VERSION);
+                    new AstWriter(out).writeProgram(statements);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Next run parses the source again
+        }
+    }
+
+    private Path fileFor(CharSequence source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+            byte[] hash = digest.digest();
+            return directory.resolve(HexFormat.of().formatHex(hash) + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
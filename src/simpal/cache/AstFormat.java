@@ -0,0 +1,42 @@
+package simpal.cache;
+
+/**
+ * Tags of the binary AST format shared by {@link AstWriter} and {@link AstReader}
+ */
+final class AstFormat {
+    static final int MAGIC = 0x53504153; // "SPAS"
+    /**
+     * Has to be increased whenever the format, the AST classes or what the resolver records on them changes, cached
+     * files of another version are ignored
+     */
+    static final int VERSION = 7;
+
+    static final int NONE = 0;
+
+    static final int ASSIGN = 1;
+    static final int BINARY = 2;
+    static final int CALL = 3;
+    static final int GROUPING = 4;
+    static final int LITERAL = 5;
+    static final int LOGICAL = 6;
+    static final int UNARY = 7;
+    static final int VARIABLE = 8;
+
+    static final int BLOCK = 1;
+    static final int COMPLETE_EXPRESSION = 2;
+    static final int FUNCTION = 3;
+    static final int IF = 4;
+    static final int PRINT = 5;
+    static final int RETURN = 6;
+    static final int VAR = 7;
+    static final int WHILE = 8;
+
+    static final int VALUE_NIL = 0;
+    static final int VALUE_TRUE = 1;
+    static final int VALUE_FALSE = 2;
+    static final int VALUE_NUMBER = 3;
+    static final int VALUE_STRING = 4;
+
+    private AstFormat() {
+    }
+}
@@ -0,0 +1,203 @@
+package simpal.cache;
+
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.token.Token;
+import simpal.token.TokenType;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads statements written by {@link AstWriter}, the result is resolved and ready to be executed
+ */
+final class AstReader {
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    AstReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    List<Statement> readProgram() throws IOException {
+        return readStatements();
+    }
+
+    private List<Statement> readStatements() throws IOException {
+        int count = readInt();
+        List<Statement> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(readStatement());
+        }
+        return statements;
+    }
+
+    private Statement readStatement() throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == AstFormat.NONE) return null;
+        // The line follows the fields of the statement
+        Statement statement = readStatement(tag);
+        statement.line = readInt();
+        return statement;
+    }
+
+    private Statement readStatement(int tag) throws IOException {
+        switch (tag) {
+            case AstFormat.BLOCK: {
+                Statement.Block block = new Statement.Block(readStatements());
+                block.slotCount = readInt();
+                block.captured = in.readBoolean();
+                return block;
+            }
+            case AstFormat.COMPLETE_EXPRESSION:
+                return new Statement.CompleteExpression(readExpression());
+            case AstFormat.FUNCTION: {
+                Token name = readToken();
+                int count = readInt();
+                List<Token> params = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    params.add(readToken());
+                }
+                Statement.Function function = new Statement.Function(name, params, readStatements());
+                function.slot = readInt();
+                function.slotCount = readInt();
+                function.captured = in.readBoolean();
+                return function;
+            }
+            case AstFormat.IF: {
+                Expression condition = readExpression();
+                Statement thenBranch = readStatement();
+                return new Statement.If(condition, thenBranch, readStatement());
+            }
+            case AstFormat.PRINT:
+                return new Statement.Print(readExpression());
+            case AstFormat.RETURN: {
+                Token keyword = readToken();
+                Statement.Return statement = new Statement.Return(keyword, readExpression());
+                statement.tailCall = in.readBoolean();
+                return statement;
+            }
+            case AstFormat.VAR: {
+                Token name = readToken();
+                Statement.Var var = new Statement.Var(name, readExpression());
+                var.slot = readInt();
+                return var;
+            }
+            case AstFormat.WHILE: {
+                Token keyword = readToken();
+                Expression condition = readExpression();
+                return new Statement.While(keyword, condition, readStatement());
+            }
+            default:
+                throw new IOException("Unknown statement tag " + tag + ".");
+        }
+    }
+
+    private Expression readExpression() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case AstFormat.NONE:
+                return null;
+            case AstFormat.ASSIGN: {
+                Token name = readToken();
+                Expression.Assign assign = new Expression.Assign(name, readExpression());
+                assign.depth = readInt();
+                assign.slot = readInt();
+                return assign;
+            }
+            case AstFormat.BINARY: {
+                Expression left = readExpression();
+                Token operator = readToken();
+                Expression.Binary binary = new Expression.Binary(left, operator, readExpression());
+                binary.numeric = in.readBoolean();
+                return binary;
+            }
+            case AstFormat.CALL: {
+                Expression callee = readExpression();
+                Token paren = readToken();
+                int count = readInt();
+                List<Expression> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    arguments.add(readExpression());
+                }
+                return new Expression.Call(callee, paren, arguments);
+            }
+            case AstFormat.GROUPING:
+                return new Expression.Grouping(readExpression());
+            case AstFormat.LITERAL:
+                return new Expression.Literal(readValue());
+            case AstFormat.LOGICAL: {
+                Expression left = readExpression();
+                Token operator = readToken();
+                return new Expression.Logical(left, operator, readExpression());
+            }
+            case AstFormat.UNARY: {
+                Token operator = readToken();
+                Expression.Unary unary = new Expression.Unary(operator, readExpression());
+                unary.numeric = in.readBoolean();
+                return unary;
+            }
+            case AstFormat.VARIABLE: {
+                Expression.Variable variable = new Expression.Variable(readToken());
+                variable.depth = readInt();
+                variable.slot = readInt();
+                return variable;
+            }
+            default:
+                throw new IOException("Unknown expression tag " + tag + ".");
+        }
+    }
+
+    private Token readToken() throws IOException {
+        TokenType tokenType;
+        try {
+            tokenType = TokenType.valueOf(readString());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown token type.", e);
+        }
+        String lexeme = readString();
+        Object literal = readValue();
+        return new Token(tokenType, lexeme, literal, readInt());
+    }
+
+    private Object readValue() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case AstFormat.VALUE_NIL:
+                return null;
+            case AstFormat.VALUE_TRUE:
+                return true;
+            case AstFormat.VALUE_FALSE:
+                return false;
+            case AstFormat.VALUE_NUMBER:
+                return in.readDouble();
+            case AstFormat.VALUE_STRING:
+                return readString();
+            default:
+                throw new IOException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    private String readString() throws IOException {
+        int index = readInt();
+        if (index == 0) {
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+        if (index > strings.size()) throw new IOException("String index out of range.");
+        return strings.get(index - 1);
+    }
+
+    private int readInt() throws IOException {
+        int encoded = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            encoded |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return encoded - 1;
+        }
+        throw new IOException("Malformed number.");
+    }
+}
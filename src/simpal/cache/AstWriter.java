@@ -0,0 +1,274 @@
+package simpal.cache;
+
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.token.Token;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes resolved statements in the binary format read by {@link AstReader}. Every node starts with a tag byte,
+ * integers are written as variable length numbers and every string goes through an interned table, the first
+ * occurrence is written in full and later ones only by their index.
+ */
+final class AstWriter implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    AstWriter(DataOutputStream out) {
+        this.out = out;
+    }
+
+    void writeProgram(List<Statement> statements) throws IOException {
+        try {
+            writeStatements(statements);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Void visitAssignExpression(Expression.Assign expression) {
+        writeByte(AstFormat.ASSIGN);
+        writeToken(expression.name);
+        writeExpression(expression.value);
+        writeInt(expression.depth);
+        writeInt(expression.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        writeByte(AstFormat.BINARY);
+        writeExpression(expression.leftExpression);
+        writeToken(expression.operator);
+        writeExpression(expression.rightExpression);
+        writeBoolean(expression.numeric);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(Expression.Call expression) {
+        writeByte(AstFormat.CALL);
+        writeExpression(expression.callee);
+        writeToken(expression.paren);
+        writeInt(expression.arguments.size());
+        for (Expression argument : expression.arguments) {
+            writeExpression(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        writeByte(AstFormat.GROUPING);
+        writeExpression(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        writeByte(AstFormat.LITERAL);
+        writeValue(expression.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(Expression.Logical expression) {
+        writeByte(AstFormat.LOGICAL);
+        writeExpression(expression.leftExpression);
+        writeToken(expression.operator);
+        writeExpression(expression.rightExpression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        writeByte(AstFormat.UNARY);
+        writeToken(expression.operator);
+        writeExpression(expression.rightExpression);
+        writeBoolean(expression.numeric);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Expression.Variable expression) {
+        writeByte(AstFormat.VARIABLE);
+        writeToken(expression.name);
+        writeInt(expression.depth);
+        writeInt(expression.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Statement.Block statement) {
+        writeByte(AstFormat.BLOCK);
+        writeStatements(statement.statements);
+        writeInt(statement.slotCount);
+        writeBoolean(statement.captured);
+        return null;
+    }
+
+    @Override
+    public Void visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+        writeByte(AstFormat.COMPLETE_EXPRESSION);
+        writeExpression(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(Statement.Function statement) {
+        writeByte(AstFormat.FUNCTION);
+        writeToken(statement.name);
+        writeInt(statement.params.size());
+        for (Token param : statement.params) {
+            writeToken(param);
+        }
+        writeStatements(statement.body);
+        writeInt(statement.slot);
+        writeInt(statement.slotCount);
+        writeBoolean(statement.captured);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Statement.If statement) {
+        writeByte(AstFormat.IF);
+        writeExpression(statement.condition);
+        writeStatement(statement.thenBranch);
+        writeStatement(statement.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Statement.Print statement) {
+        writeByte(AstFormat.PRINT);
+        writeExpression(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Statement.Return statement) {
+        writeByte(AstFormat.RETURN);
+        writeToken(statement.keyword);
+        writeExpression(statement.value);
+        writeBoolean(statement.tailCall);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Statement.Var statement) {
+        writeByte(AstFormat.VAR);
+        writeToken(statement.name);
+        writeExpression(statement.initializer);
+        writeInt(statement.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Statement.While statement) {
+        writeByte(AstFormat.WHILE);
+        writeToken(statement.keyword);
+        writeExpression(statement.condition);
+        writeStatement(statement.body);
+        return null;
+    }
+
+    private void writeStatements(List<Statement> statements) {
+        writeInt(statements.size());
+        for (Statement statement : statements) {
+            writeStatement(statement);
+        }
+    }
+
+    private void writeStatement(Statement statement) {
+        if (statement == null) {
+            writeByte(AstFormat.NONE);
+        } else {
+            statement.accept(this);
+            writeInt(statement.line);
+        }
+    }
+
+    private void writeExpression(Expression expression) {
+        if (expression == null) {
+            writeByte(AstFormat.NONE);
+        } else {
+            expression.accept(this);
+        }
+    }
+
+    private void writeToken(Token token) {
+        writeString(token.tokenType.name());
+        writeString(token.lexeme());
+        writeValue(token.literal);
+        writeInt(token.line);
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeByte(AstFormat.VALUE_NIL);
+        } else if (value instanceof Boolean) {
+            writeByte((boolean) value ? AstFormat.VALUE_TRUE : AstFormat.VALUE_FALSE);
+        } else if (value instanceof Double) {
+            writeByte(AstFormat.VALUE_NUMBER);
+            try {
+                out.writeDouble((double) value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            writeByte(AstFormat.VALUE_STRING);
+            writeString((String) value);
+        }
+    }
+
+    private void writeString(String value) {
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeInt(index + 1);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeInt(0);
+        try {
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the value 7 bits at a time, the high bit marks that more bytes follow, -1 is written as 0 so unresolved
+     * depths and slots stay one byte long
+     */
+    private void writeInt(int value) {
+        int encoded = value + 1;
+        try {
+            while ((encoded & ~0x7F) != 0) {
+                out.writeByte((encoded & 0x7F) | 0x80);
+                encoded >>>= 7;
+            }
+            out.writeByte(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    private void writeByte(int value) {
+        try {
+            out.writeByte(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
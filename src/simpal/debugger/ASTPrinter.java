@@ -9,7 +9,7 @@ public class ASTPrinter implements Expression.Visitor<String> {
 
     @Override
     public String visitBinaryExpression(Expression.Binary expression) {
-        return parenthesize(expression.operator.lexeme, expression.leftExpression, expression.rightExpression);
+        return parenthesize(expression.operator.lexeme(), expression.leftExpression, expression.rightExpression);
     }
 
     @Override
@@ -19,7 +19,7 @@ public class ASTPrinter implements Expression.Visitor<String> {
 
     @Override
     public String visitUnaryExpression(Expression.Unary expression) {
-        return parenthesize(expression.operator.lexeme, expression.rightExpression);
+        return parenthesize(expression.operator.lexeme(), expression.rightExpression);
     }
 
     @Override
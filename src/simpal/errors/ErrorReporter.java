@@ -0,0 +1,117 @@
+package simpal.errors;
+
+import simpal.token.Token;
+import simpal.token.TokenType;
+
+import java.io.PrintStream;
+
+/**
+ * Receives the errors of one context, errors found while scanning, parsing, resolving or compiling as well as the
+ * runtime error that stops a program, and remembers whether there were any. Prints them the way the command line
+ * does, a subclass can send them elsewhere by overriding {@link #print(int, String, String)} and
+ * {@link #print(SimPalRuntimeError)}.
+ */
+public class ErrorReporter {
+    private final PrintStream out;
+    private int errorCount = 0;
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    /**
+     * @param out stream the errors are printed on
+     */
+    public ErrorReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Reports an error with the line it is on
+     *
+     * @param lineNumber   line number on which error has occurred
+     * @param errorMessage message that needs to be displayed
+     */
+    public void error(int lineNumber, String errorMessage) {
+        report(lineNumber, "", errorMessage);
+    }
+
+    /**
+     * Reports an error at a token
+     *
+     * @param token   token at which error has occurred, provides line number
+     * @param message error message to be displayed
+     */
+    public void error(Token token, String message) {
+        if (token.tokenType == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme() + "'", message);
+        }
+    }
+
+    /**
+     * Reports the runtime error that stopped the program
+     *
+     * @param simPalRuntimeError error thrown while executing
+     */
+    public void runtimeError(SimPalRuntimeError simPalRuntimeError) {
+        hadRuntimeError = true;
+        print(simPalRuntimeError);
+    }
+
+    private void report(int lineNumber, String where, String errorMessage) {
+        hadError = true;
+        errorCount++;
+        print(lineNumber, where, errorMessage);
+    }
+
+    /**
+     * Prints an error found before the program runs
+     *
+     * @param lineNumber   line number of source code where error has occurred
+     * @param where        location of error in the line ( like in the end or lexeme location )
+     * @param errorMessage detailed message of error
+     */
+    protected void print(int lineNumber, String where, String errorMessage) {
+        out.println("[line " + lineNumber + "] Error" + where + ": " + errorMessage);
+    }
+
+    /**
+     * Prints a runtime error
+     *
+     * @param simPalRuntimeError error thrown while executing
+     */
+    protected void print(SimPalRuntimeError simPalRuntimeError) {
+        out.println(simPalRuntimeError.getMessage() + "\n[line " + simPalRuntimeError.line + "]");
+    }
+
+    /**
+     * Whether an error was reported before the program could run since the last {@link #clear()}
+     */
+    public boolean hadError() {
+        return hadError;
+    }
+
+    /**
+     * Whether a runtime error was reported since the last {@link #clear()}
+     */
+    public boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    /**
+     * Number of errors reported before programs could run, never reset, lets a caller tell if a step reported any
+     *
+     * @return errors reported since the reporter was created
+     */
+    public int errorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Forgets about the errors of earlier runs, the error count keeps going up
+     */
+    public void clear() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+}
@@ -0,0 +1,11 @@
+package simpal.errors;
+
+/**
+ * Stops a program that went past one of the execution limits it was given, see
+ * {@link simpal.interpreter.ExecutionLimits}. Reported like any other runtime error of the program.
+ */
+public class ExecutionLimitError extends SimPalRuntimeError {
+    public ExecutionLimitError(int line, String message) {
+        super(line, message);
+    }
+}
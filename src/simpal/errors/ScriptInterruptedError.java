@@ -0,0 +1,12 @@
+package simpal.errors;
+
+/**
+ * Stops a program whose thread was interrupted, thrown when the execution limits are next checked, see
+ * {@link simpal.interpreter.ExecutionBudget}. It is not a {@link SimPalRuntimeError}, so it is not reported as an
+ * error of the program but passed on to whoever runs it.
+ */
+public class ScriptInterruptedError extends RuntimeException {
+    public ScriptInterruptedError() {
+        super("Script was interrupted.");
+    }
+}
@@ -4,9 +4,23 @@ import simpal.token.Token;
 
 public class SimPalRuntimeError extends RuntimeException {
     public final Token token;
+    public final int line;
 
     public SimPalRuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    /**
+     * Runtime error raised where no token is at hand, like in the bytecode {@link simpal.vm.VM}
+     *
+     * @param line    line number of the source code where the error has occurred
+     * @param message error message to be displayed
+     */
+    public SimPalRuntimeError(int line, String message) {
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
@@ -0,0 +1,23 @@
+package simpal.functions;
+
+import simpal.interpreter.Interpreter;
+
+/**
+ * Native function returning the seconds elapsed since the epoch
+ */
+public class Clock implements SimPalCallable {
+    @Override
+    public int arity() {
+        return 0;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return (double) System.currentTimeMillis() / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
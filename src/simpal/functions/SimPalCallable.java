@@ -2,10 +2,15 @@ package simpal.functions;
 
 import simpal.interpreter.Interpreter;
 
-import java.util.List;
-
 public interface SimPalCallable {
     int arity();
 
-    Object call(Interpreter interpreter, List<Object> arguments);
+    /**
+     * Calls the function, the arguments are only valid during the call
+     *
+     * @param interpreter interpreter running the call, null when the bytecode VM calls a native function
+     * @param arguments   evaluated arguments, exactly {@link #arity()} of them
+     * @return value returned by the function
+     */
+    Object call(Interpreter interpreter, Object[] arguments);
 }
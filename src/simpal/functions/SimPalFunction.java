@@ -1,45 +1,64 @@
 package simpal.functions;
 
 import simpal.interpreter.Environment;
+import simpal.interpreter.GlobalCells;
 import simpal.interpreter.Interpreter;
 import simpal.lang.Statement;
 
-import java.util.List;
-
 public class SimPalFunction implements SimPalCallable {
     private final Statement.Function declaration;
     private final Environment closure;
+    private final GlobalCells globalCells;
+    private final int arity;
 
-    public SimPalFunction(Statement.Function declaration, Environment closure) {
+    /**
+     * @param globalCells cells of the globals of the run of the program the function is declared in
+     */
+    public SimPalFunction(Statement.Function declaration, Environment closure, GlobalCells globalCells) {
         this.declaration = declaration;
         this.closure = closure;
+        this.globalCells = globalCells;
+        this.arity = declaration.params.size();
+    }
+
+    public Statement.Function declaration() {
+        return declaration;
+    }
+
+    /**
+     * Environment the function was declared in, it encloses the frame of every call
+     *
+     * @return enclosing environment of the calls
+     */
+    public Environment closure() {
+        return closure;
+    }
+
+    /**
+     * Cells of the globals the function refers to, by the indexes of the program it is declared in
+     */
+    public GlobalCells globalCells() {
+        return globalCells;
     }
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return arity;
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        Environment environment = new Environment(closure, declaration.slotCount);
 
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-                    arguments.get(i));
+        // Parameters are declared first in the function scope, so they take the first slots
+        for (int i = 0; i < arity; i++) {
+            environment.define(i, arguments[i]);
         }
-
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (SimPalReturn returnValue) {
-            return returnValue.value;
-        }
-
-        return null;
+        return interpreter.invoke(this, environment);
     }
 
     @Override
     public String toString() {
-        return "<fn " + declaration.name.lexeme + ">";
+        return "<fn " + declaration.name.lexeme() + ">";
     }
 }
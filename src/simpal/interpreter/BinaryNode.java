@@ -0,0 +1,305 @@
+package simpal.interpreter;
+
+import simpal.errors.DivideByZeroError;
+import simpal.errors.SimPalRuntimeError;
+import simpal.lang.Expression;
+import simpal.token.TokenType;
+
+/**
+ * Executable behaviour of an {@link Expression.Binary}, picked by the {@link Simplifier} from the operator so the
+ * {@link Interpreter} never switches on it. Nodes hold no state, a node that sees operand types it is not specialized
+ * for rewrites the expression to a more general node and carries on with it. Every node gives the right result for
+ * any operands, so a run on another thread that still sees the node from before a rewrite is only slower.
+ */
+public abstract class BinaryNode {
+    private static final String NUMBERS = "Operands must be numbers.";
+    private static final String NUMBERS_OR_STRINGS = "Operands must be two numbers or two strings.";
+
+    private static final BinaryNode UNINITIALIZED_ADD = new UninitializedAdd();
+    private static final BinaryNode ADD_DOUBLE = new AddDouble();
+    private static final BinaryNode NUMERIC_ADD = new NumericAdd();
+    private static final BinaryNode CONCAT_STRING = new ConcatString();
+    private static final BinaryNode GENERIC_ADD = new GenericAdd();
+    private static final BinaryNode SUBTRACT_DOUBLE = new SubtractDouble();
+    private static final BinaryNode MULTIPLY_DOUBLE = new MultiplyDouble();
+    private static final BinaryNode DIVIDE_DOUBLE = new DivideDouble();
+    private static final BinaryNode MODULO_DOUBLE = new ModuloDouble();
+    private static final BinaryNode LESS_DOUBLE = new LessDouble();
+    private static final BinaryNode LESS_EQUAL_DOUBLE = new LessEqualDouble();
+    private static final BinaryNode GREATER_DOUBLE = new GreaterDouble();
+    private static final BinaryNode GREATER_EQUAL_DOUBLE = new GreaterEqualDouble();
+    private static final BinaryNode EQUAL = new Equal();
+    private static final BinaryNode NOT_EQUAL = new NotEqual();
+    private static final BinaryNode NIL = new Nil();
+
+    /**
+     * Picks the starting node for a binary expression
+     *
+     * @param operator operator of the expression
+     * @param numeric  whether the operands are known to be numbers, see {@link Resolver#isNumeric(Expression)}
+     * @return node that the expression is executed with until it gets rewritten
+     */
+    public static BinaryNode create(TokenType operator, boolean numeric) {
+        switch (operator) {
+            case PLUS:
+                return numeric ? NUMERIC_ADD : UNINITIALIZED_ADD;
+            case MINUS:
+                return SUBTRACT_DOUBLE;
+            case STAR:
+                return MULTIPLY_DOUBLE;
+            case SLASH:
+                return DIVIDE_DOUBLE;
+            case MODULO:
+                return MODULO_DOUBLE;
+            case LESS:
+                return LESS_DOUBLE;
+            case LESS_EQUAL:
+                return LESS_EQUAL_DOUBLE;
+            case GREATER:
+                return GREATER_DOUBLE;
+            case GREATER_EQUAL:
+                return GREATER_EQUAL_DOUBLE;
+            case EQUAL_EQUAL:
+                return EQUAL;
+            case BANG_EQUAL:
+                return NOT_EQUAL;
+            default:
+                return NIL;
+        }
+    }
+
+    /**
+     * Replaces the node of the expression, an expression the {@link Simplifier} did not make keeps running the node of
+     * its operator and is never rewritten
+     */
+    static void rewrite(Expression.Binary expression, BinaryNode node) {
+        if (expression instanceof SpecializedBinary) ((SpecializedBinary) expression).node = node;
+    }
+
+    /**
+     * Evaluates the operands and applies the operator
+     */
+    abstract Object execute(Interpreter interpreter, Expression.Binary expression);
+
+    /**
+     * Same as {@link #execute(Interpreter, Expression.Binary)} for expressions the resolver marked numeric, the result
+     * stays unboxed
+     */
+    double executeDouble(Interpreter interpreter, Expression.Binary expression) {
+        return (double) execute(interpreter, expression);
+    }
+
+    /**
+     * Base of nodes whose operands must be numbers, the operands are evaluated without boxing where possible
+     */
+    private abstract static class DoubleArithmetic extends BinaryNode {
+        private final String message;
+
+        DoubleArithmetic() {
+            this(NUMBERS);
+        }
+
+        DoubleArithmetic(String message) {
+            this.message = message;
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            return executeDouble(interpreter, expression);
+        }
+
+        @Override
+        double executeDouble(Interpreter interpreter, Expression.Binary expression) {
+            interpreter.evaluateNumberOperands(expression, message);
+            return apply(interpreter.leftOperand, interpreter.rightOperand);
+        }
+
+        abstract double apply(double left, double right);
+    }
+
+    private abstract static class DoubleComparison extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            interpreter.evaluateNumberOperands(expression, NUMBERS);
+            return apply(interpreter.leftOperand, interpreter.rightOperand);
+        }
+
+        abstract boolean apply(double left, double right);
+    }
+
+    /**
+     * '+' whose operands have not been seen yet, specializes on the first execution
+     */
+    private static class UninitializedAdd extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            Object left = interpreter.evaluateExpression(expression.leftExpression);
+            Object right = interpreter.evaluateExpression(expression.rightExpression);
+
+            if (left instanceof Double && right instanceof Double) {
+                rewrite(expression, ADD_DOUBLE);
+            } else if (left instanceof String && right instanceof String) {
+                rewrite(expression, CONCAT_STRING);
+            } else {
+                rewrite(expression, GENERIC_ADD);
+            }
+            return GenericAdd.add(interpreter, expression, left, right);
+        }
+    }
+
+    private static class AddDouble extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            Object left = interpreter.evaluateExpression(expression.leftExpression);
+            Object right = interpreter.evaluateExpression(expression.rightExpression);
+
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+            rewrite(expression, GENERIC_ADD);
+            return GenericAdd.add(interpreter, expression, left, right);
+        }
+    }
+
+    /**
+     * '+' with an operand that is known to be a number, so both of them have to be numbers
+     */
+    private static class NumericAdd extends DoubleArithmetic {
+        NumericAdd() {
+            super(NUMBERS_OR_STRINGS);
+        }
+
+        @Override
+        double apply(double left, double right) {
+            return left + right;
+        }
+    }
+
+    private static class ConcatString extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            Object left = interpreter.evaluateExpression(expression.leftExpression);
+            Object right = interpreter.evaluateExpression(expression.rightExpression);
+
+            if (left instanceof String && right instanceof String) {
+                return interpreter.concatenate(expression, (String) left, (String) right);
+            }
+            rewrite(expression, GENERIC_ADD);
+            return GenericAdd.add(interpreter, expression, left, right);
+        }
+    }
+
+    /**
+     * '+' that has seen operands of different types, never rewritten again
+     */
+    private static class GenericAdd extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            Object left = interpreter.evaluateExpression(expression.leftExpression);
+            Object right = interpreter.evaluateExpression(expression.rightExpression);
+            return add(interpreter, expression, left, right);
+        }
+
+        static Object add(Interpreter interpreter, Expression.Binary expression, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+
+            if (left instanceof String && right instanceof String) {
+                return interpreter.concatenate(expression, (String) left, (String) right);
+            }
+            throw new SimPalRuntimeError(expression.operator, NUMBERS_OR_STRINGS);
+        }
+    }
+
+    private static class SubtractDouble extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left - right;
+        }
+    }
+
+    private static class MultiplyDouble extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            return left * right;
+        }
+    }
+
+    private static class DivideDouble extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            if (right == 0) {
+                throw new DivideByZeroError("Division by zero is not possible.");
+            }
+            return left / right;
+        }
+    }
+
+    private static class ModuloDouble extends DoubleArithmetic {
+        @Override
+        double apply(double left, double right) {
+            if (right == 0) {
+                throw new DivideByZeroError("Remainder when any number is divided by zero is not possible.");
+            }
+            return left % right;
+        }
+    }
+
+    private static class LessDouble extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left < right;
+        }
+    }
+
+    private static class LessEqualDouble extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left <= right;
+        }
+    }
+
+    private static class GreaterDouble extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left > right;
+        }
+    }
+
+    private static class GreaterEqualDouble extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return left >= right;
+        }
+    }
+
+    /**
+     * '==' only accepts numbers, but compares them like {@link Double#equals(Object)} does
+     */
+    private static class Equal extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+        }
+    }
+
+    private static class NotEqual extends DoubleComparison {
+        @Override
+        boolean apply(double left, double right) {
+            return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+        }
+    }
+
+    /**
+     * Operator without a meaning, evaluates both operands for their side effects
+     */
+    private static class Nil extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Binary expression) {
+            interpreter.evaluateExpression(expression.leftExpression);
+            interpreter.evaluateExpression(expression.rightExpression);
+            return null;
+        }
+    }
+}
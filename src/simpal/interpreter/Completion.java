@@ -0,0 +1,15 @@
+package simpal.interpreter;
+
+/**
+ * How the execution of a statement ended, a return is passed up through the enclosing statements as a plain value
+ * instead of unwinding them with an exception
+ */
+public enum Completion {
+    NORMAL,
+    RETURN,
+    /**
+     * A return statement whose value is a call, the call is made by the caller of the returning function once its
+     * frame is done, so tail recursion does not grow the Java stack
+     */
+    TAIL_CALL
+}
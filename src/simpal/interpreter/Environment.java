@@ -3,47 +3,90 @@ package simpal.interpreter;
 import simpal.errors.SimPalRuntimeError;
 import simpal.token.Token;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Storage for variables, the global environment keeps a {@link GlobalCell} for each variable by name as globals are
+ * late bound, every other environment is a fixed size frame whose slots are assigned by the {@link Resolver}
+ */
 public class Environment {
 
-    final Environment enclosingEnvironment;
+    Environment enclosingEnvironment;
+
+    private final Map<String, GlobalCell> values;
+    private final Object[] slots;
 
     public Environment() {
         enclosingEnvironment = null;
+        values = new HashMap<>();
+        slots = null;
     }
 
-    public Environment(Environment environment) {
+    public Environment(Environment environment, int size) {
         enclosingEnvironment = environment;
+        values = null;
+        slots = new Object[size];
     }
 
-    private final Map<String, Object> values = new HashMap<>();
+    /**
+     * Number of slots this frame can hold, a recycled frame may be larger than the scope using it
+     */
+    int capacity() {
+        return slots.length;
+    }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+    /**
+     * Prepares a recycled frame for another scope
+     *
+     * @param environment new enclosing environment
+     */
+    void reuse(Environment environment) {
+        enclosingEnvironment = environment;
+    }
 
-        // Not sure if this should be above
-        if (enclosingEnvironment != null) {
-            return enclosingEnvironment.get(name);
-        }
+    /**
+     * Drops the values of a frame that goes back to the pool so they can be garbage collected
+     */
+    void clear() {
+        enclosingEnvironment = null;
+        Arrays.fill(slots, null);
+    }
+
+    /**
+     * Finds the cell of a global variable, it stays the cell of that variable even if the variable is defined again
+     *
+     * @param name token of the variable
+     * @return cell holding the value of the variable
+     */
+    GlobalCell cell(Token name) {
+        GlobalCell cell = values.get(name.lexeme());
+        if (cell != null) return cell;
 
         throw new SimPalRuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+                "Undefined variable '" + name.lexeme() + "'.");
     }
 
     public void define(String name, Object value) {
-        values.put(name, value);
+        GlobalCell cell = values.get(name);
+        if (cell != null) {
+            cell.value = value;
+        } else {
+            values.put(name, new GlobalCell(name, value));
+        }
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    public void define(int slot, Object value) {
+        slots[slot] = value;
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
     }
 
     Environment ancestor(int distance) {
@@ -54,19 +97,4 @@ public class Environment {
 
         return environment;
     }
-
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        if (enclosingEnvironment != null) {
-            enclosingEnvironment.assign(name, value);
-            return;
-        }
-
-        throw new SimPalRuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
-    }
 }
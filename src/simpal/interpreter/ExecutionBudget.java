@@ -0,0 +1,94 @@
+package simpal.interpreter;
+
+import simpal.errors.ExecutionLimitError;
+import simpal.errors.ScriptInterruptedError;
+
+/**
+ * What is left of the {@link ExecutionLimits} of the run in progress, shared by the {@link Interpreter} and the
+ * bytecode VM. A step only counts down, the limits, the clock and whether the thread was interrupted are checked once
+ * every {@link #CHECK_INTERVAL} steps, or sooner when the step limit is closer, so a run without limits pays no more
+ * than the countdown.
+ */
+public final class ExecutionBudget {
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final ExecutionLimits limits;
+    // Steps until the next check, and how many the countdown started from
+    private int countdown;
+    private int interval;
+    private long stepsLeft;
+    private long stringCharsLeft;
+    private long deadline;
+
+    public ExecutionBudget(ExecutionLimits limits) {
+        this.limits = limits;
+        reset();
+    }
+
+    /**
+     * Gives the next run the whole budget, its time is counted from here
+     */
+    public void reset() {
+        stepsLeft = limits.maxSteps > 0 ? limits.maxSteps : Long.MAX_VALUE;
+        stringCharsLeft = limits.maxStringChars > 0 ? limits.maxStringChars : Long.MAX_VALUE;
+        deadline = limits.maxWallNanos > 0 ? System.nanoTime() + limits.maxWallNanos : 0;
+        interval = stepsLeft < CHECK_INTERVAL ? (int) stepsLeft + 1 : CHECK_INTERVAL;
+        countdown = interval;
+    }
+
+    /**
+     * Counts one loop iteration or call
+     *
+     * @return true if the limits have to be checked now with {@link #check(int)}
+     */
+    public boolean step() {
+        return --countdown == 0;
+    }
+
+    /**
+     * Checks the limits after the countdown of {@link #step()} ran out and starts the next one
+     *
+     * @param line line number of the source code of the step
+     * @throws ExecutionLimitError     if the run went past a limit
+     * @throws ScriptInterruptedError if the thread running the program was interrupted
+     */
+    public void check(int line) {
+        if (Thread.currentThread().isInterrupted()) throw new ScriptInterruptedError();
+
+        stepsLeft -= interval;
+        if (stepsLeft < 0) {
+            throw new ExecutionLimitError(line, "Step limit of " + limits.maxSteps + " exceeded.");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new ExecutionLimitError(line,
+                    "Time limit of " + limits.maxWallNanos / 1_000_000 + " ms exceeded.");
+        }
+        interval = stepsLeft < CHECK_INTERVAL ? (int) stepsLeft + 1 : CHECK_INTERVAL;
+        countdown = interval;
+    }
+
+    /**
+     * Most calls that may be running at the same time
+     */
+    public int maxCallDepth() {
+        return limits.maxCallDepth > 0 ? limits.maxCallDepth : Integer.MAX_VALUE;
+    }
+
+    public ExecutionLimitError callDepthExceeded(int line) {
+        return new ExecutionLimitError(line, "Call depth limit of " + limits.maxCallDepth + " exceeded.");
+    }
+
+    /**
+     * Counts the characters of a string built by the program
+     *
+     * @param length length of the new string
+     * @param line   line number of the source code that built it
+     * @throws ExecutionLimitError if the strings of the run went past their limit
+     */
+    public void allocateString(int length, int line) {
+        stringCharsLeft -= length;
+        if (stringCharsLeft < 0) {
+            throw new ExecutionLimitError(line, "String limit of " + limits.maxStringChars + " characters exceeded.");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package simpal.interpreter;
+
+import java.time.Duration;
+
+/**
+ * How far a single run of a program may go before it is stopped with an
+ * {@link simpal.errors.ExecutionLimitError}, a limit of 0 means there is none. Steps are loop iterations and calls,
+ * every statement that runs for long repeats one of them, so they are what the limits are checked on.
+ */
+public final class ExecutionLimits {
+    public static final ExecutionLimits NONE = new ExecutionLimits(0, 0, null, 0);
+
+    // Loop iterations and calls, tail calls included
+    public final long maxSteps;
+    // Calls running at the same time, a tail call replaces the call it is made from
+    public final int maxCallDepth;
+    public final long maxWallNanos;
+    // Characters of all strings built by concatenation together
+    public final long maxStringChars;
+
+    /**
+     * @param maxSteps       loop iterations and calls a run may take, 0 for no limit
+     * @param maxCallDepth   calls that may be running at the same time, 0 for no limit
+     * @param maxWallTime    time a run may take, null for no limit
+     * @param maxStringChars characters of the strings a run may build, 0 for no limit
+     */
+    public ExecutionLimits(long maxSteps, int maxCallDepth, Duration maxWallTime, long maxStringChars) {
+        if (maxSteps < 0 || maxCallDepth < 0 || maxStringChars < 0 || maxWallTime != null && maxWallTime.isNegative()) {
+            throw new IllegalArgumentException("Execution limits cannot be negative.");
+        }
+        this.maxSteps = maxSteps;
+        this.maxCallDepth = maxCallDepth;
+        this.maxWallNanos = maxWallTime != null ? maxWallTime.toNanos() : 0;
+        this.maxStringChars = maxStringChars;
+    }
+}
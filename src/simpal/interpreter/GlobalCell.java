@@ -0,0 +1,17 @@
+package simpal.interpreter;
+
+/**
+ * Holds the value of one global variable. A global keeps its cell for as long as the program runs, defining it again
+ * only replaces the value, so an interpreter can keep the cell by the index of the global, see {@link GlobalNames},
+ * and skip the lookup by name next time.
+ */
+public final class GlobalCell {
+    // Name of the global, a cell kept at an index is only used by accesses of the same name
+    public final String name;
+    public Object value;
+
+    public GlobalCell(String name, Object value) {
+        this.name = name;
+        this.value = value;
+    }
+}
@@ -0,0 +1,26 @@
+package simpal.interpreter;
+
+import java.util.Arrays;
+
+/**
+ * Cells of the globals one run of a program has looked up, by the index the {@link GlobalNames} of the program gave
+ * them. Functions declared by the run keep it, so a later program of the same context calling them finds their
+ * globals by the same indexes.
+ */
+public final class GlobalCells {
+    private GlobalCell[] cells = new GlobalCell[8];
+
+    /**
+     * @param index index of the global in the program
+     * @return cell kept for the global or null if it was not looked up yet
+     */
+    public GlobalCell get(int index) {
+        GlobalCell[] cells = this.cells;
+        return index < cells.length ? cells[index] : null;
+    }
+
+    public void put(int index, GlobalCell cell) {
+        if (index >= cells.length) cells = Arrays.copyOf(cells, Math.max(index + 1, cells.length * 2));
+        cells[index] = cell;
+    }
+}
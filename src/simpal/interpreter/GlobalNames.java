@@ -0,0 +1,23 @@
+package simpal.interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives every global variable name of a program an index, the {@link Resolver} stores it in the slot of the accesses
+ * to the global. Indexes count from 0 in every program, so a run keeps the cells of the globals its program uses in
+ * {@link GlobalCells} no larger than the program. Declarations resolved one at a time that run as one program have to
+ * share one.
+ */
+public final class GlobalNames {
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    public int index(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(name, index);
+        }
+        return index;
+    }
+}
@@ -1,59 +1,75 @@
 package simpal.interpreter;
 
-import simpal.SimPal;
 import simpal.errors.DivideByZeroError;
-import simpal.errors.IOError;
+import simpal.errors.ErrorReporter;
 import simpal.errors.SimPalRuntimeError;
+import simpal.functions.Clock;
 import simpal.functions.SimPalCallable;
 import simpal.functions.SimPalFunction;
-import simpal.functions.SimPalReturn;
 import simpal.lang.Expression;
 import simpal.lang.Statement;
+import simpal.output.OutputSink;
 import simpal.token.Token;
 import simpal.token.TokenType;
 
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
-public class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Void> {
+public class Interpreter implements Expression.Visitor<Object>, Statement.Visitor<Completion> {
+    private static final int MIN_POOLED_FRAME = 8;
+    private static final Object[] NO_ARGUMENTS = new Object[0];
 
     final Environment globals = new Environment();
+    // Cells of the globals of the program the running code belongs to, see GlobalNames
+    private GlobalCells globalCells = new GlobalCells();
     private Environment environment = globals;
-    private final Map<Expression, Integer> locals = new HashMap<>();
-    public String outputFilePth;
-
-    public Interpreter() {
-        globals.define("clock", new SimPalCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000;
-            }
+    // Frames of finished blocks and calls that no closure captured, reused by the next such block or call
+    private Environment[] framePool = new Environment[16];
+    private int pooledFrames = 0;
+    // Value of the last executed return statement, handed over to the caller by takeReturnValue
+    private Object returnValue;
+    // Function and frame of the call the last executed return statement ended with, made by invoke
+    private SimPalFunction tailFunction;
+    private Environment tailFrame;
+    // Results of evaluateNumberOperands, kept in fields so numeric operands are never boxed
+    double leftOperand;
+    double rightOperand;
+    private final OutputSink outputSink;
+    private final ErrorReporter errors;
+    private final ExecutionBudget budget;
+    private final int maxCallDepth;
+    // Calls of SimPal functions in progress, the tail calls they made replaced them
+    private int callDepth = 0;
+
+    /**
+     * @param outputSink destination of print statements
+     * @param errors     reporter of the runtime error that stops a program
+     */
+    public Interpreter(OutputSink outputSink, ErrorReporter errors) {
+        this(outputSink, errors, ExecutionLimits.NONE);
+    }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+    /**
+     * @param outputSink destination of print statements
+     * @param errors     reporter of the runtime error that stops a program
+     * @param limits     limits every run of a program is given
+     */
+    public Interpreter(OutputSink outputSink, ErrorReporter errors, ExecutionLimits limits) {
+        this.outputSink = outputSink;
+        this.errors = errors;
+        this.budget = new ExecutionBudget(limits);
+        this.maxCallDepth = budget.maxCallDepth();
+        globals.define("clock", new Clock());
     }
 
     @Override
     public Object visitAssignExpression(Expression.Assign expression) {
         Object value = evaluateExpression(expression.value);
 
-        Integer distance = locals.get(expression);
-        if (distance != null) {
-            environment.assignAt(distance, expression.name, value);
+        if (expression.depth != Resolver.GLOBAL) {
+            environment.assignAt(expression.depth, expression.slot, value);
         } else {
-            globals.assign(expression.name, value);
+            globalCell(expression.name, expression.slot).value = value;
         }
 
         return value;
@@ -61,59 +77,7 @@ public class Interpreter implements Expression.Visitor<Object>, Statement.Visito
 
     @Override
     public Object visitBinaryExpression(Expression.Binary expression) throws SimPalRuntimeError {
-        Object leftExpression = evaluateExpression(expression.leftExpression);
-        Object rightExpression = evaluateExpression(expression.rightExpression);
-        Token operator = expression.operator;
-        switch (operator.tokenType) {
-            case GREATER:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression > (double) rightExpression;
-            case GREATER_EQUAL:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression >= (double) rightExpression;
-            case LESS:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression < (double) rightExpression;
-            case LESS_EQUAL:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression <= (double) rightExpression;
-            case MINUS:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression - (double) rightExpression;
-            case SLASH:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                if ((double) rightExpression == 0) {
-                    throw new DivideByZeroError("Division by zero is not possible.");
-                }
-                return (double) leftExpression / (double) rightExpression;
-            case MODULO:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                if ((double) rightExpression == 0) {
-                    throw new DivideByZeroError("Remainder when any number is divided by zero is not possible.");
-                }
-                return (double)leftExpression % (double)rightExpression;
-            case STAR:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return (double) leftExpression * (double) rightExpression;
-            case BANG_EQUAL:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return !isEqual(leftExpression, rightExpression);
-            case EQUAL_EQUAL:
-                checkNumberOperands(operator, leftExpression, rightExpression);
-                return isEqual(leftExpression, rightExpression);
-            case PLUS:
-                if (leftExpression instanceof Double && rightExpression instanceof Double) {
-                    return (double) leftExpression + (double) rightExpression;
-                }
-
-                if (leftExpression instanceof String && rightExpression instanceof String) {
-                    return (String) leftExpression + (String) rightExpression;
-                }
-                throw new SimPalRuntimeError(operator,
-                        "Operands must be two numbers or two strings.");
-        }
-
-        return null;
+        return node(expression).execute(this, expression);
     }
 
     @Override
@@ -142,26 +106,43 @@ public class Interpreter implements Expression.Visitor<Object>, Statement.Visito
 
     @Override
     public Object visitUnaryExpression(Expression.Unary expression) throws SimPalRuntimeError {
-        Object rightExpression = evaluateExpression(expression.rightExpression);
-        Token operator = expression.operator;
-        switch (operator.tokenType) {
-            case BANG:
-                return !isTruthy(rightExpression);
-            case MINUS:
-                checkNumberOperand(operator, rightExpression);
-                return -(double) rightExpression;
-        }
-
-        return null;
+        return node(expression).execute(this, expression);
     }
 
     @Override
     public Object visitCallExpression(Expression.Call expression) {
         Object callee = evaluateExpression(expression.callee);
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expression argument : expression.arguments) {
-            arguments.add(evaluateExpression(argument));
+        if (callee instanceof SimPalFunction && ((SimPalFunction) callee).arity() == expression.arguments.size()) {
+            SimPalFunction function = (SimPalFunction) callee;
+            Environment frame = enterFrame(function, expression.arguments);
+            if (budget.step()) budget.check(expression.paren.line);
+            if (++callDepth > maxCallDepth) throw budget.callDepthExceeded(expression.paren.line);
+            Object value;
+            try {
+                value = invoke(function, frame);
+            } catch (StackOverflowError e) {
+                // Reported like any runtime error by the innermost call that has the stack left to do it
+                throw new SimPalRuntimeError(expression.paren, "Stack overflow.");
+            }
+            callDepth--;
+            return value;
+        }
+        return call(callee, expression);
+    }
+
+    /**
+     * Calls anything but a SimPal function with as many arguments as it has parameters, the callee is already evaluated
+     *
+     * @param callee     value the callee evaluated to
+     * @param expression call expression
+     * @return value returned by the callee
+     */
+    private Object call(Object callee, Expression.Call expression) {
+        int count = expression.arguments.size();
+        Object[] arguments = count == 0 ? NO_ARGUMENTS : new Object[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = evaluateExpression(expression.arguments.get(i));
         }
 
         if (!(callee instanceof SimPalCallable)) {
@@ -171,132 +152,287 @@ public class Interpreter implements Expression.Visitor<Object>, Statement.Visito
 
         SimPalCallable function = (SimPalCallable) callee;
 
-        if (arguments.size() != function.arity()) {
+        if (count != function.arity()) {
             throw new SimPalRuntimeError(expression.paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    count + ".");
         }
 
         return function.call(this, arguments);
     }
 
+    /**
+     * Creates the frame of a call to a function written in SimPal with as many arguments as it has parameters, the
+     * arguments are evaluated straight into it, a frame that no closure declared in the function can keep is taken
+     * from the frame pool
+     *
+     * @param function  called function
+     * @param arguments argument expressions of the call
+     * @return frame holding the arguments
+     */
+    private Environment enterFrame(SimPalFunction function, List<Expression> arguments) {
+        Statement.Function declaration = function.declaration();
+        Environment frame = declaration.captured ? new Environment(function.closure(), declaration.slotCount)
+                : acquireFrame(function.closure(), declaration.slotCount);
+
+        // Parameters are declared first in the function scope, so they take the first slots, the arguments are still
+        // evaluated in the environment of the caller
+        for (int i = 0; i < arguments.size(); i++) {
+            frame.define(i, evaluateExpression(arguments.get(i)));
+        }
+        return frame;
+    }
+
+    /**
+     * Runs the body of a function in a frame that already holds its arguments, then every call the function ends with
+     * in a return statement, one after another in this loop instead of nested in each other
+     *
+     * @param function called function
+     * @param frame    frame of the call
+     * @return value returned by the function, nil if it did not return one
+     */
+    public Object invoke(SimPalFunction function, Environment frame) {
+        // Not restored when an error ends the run, the next run starts with cells of its own
+        GlobalCells callerGlobalCells = globalCells;
+        for (; ; ) {
+            globalCells = function.globalCells();
+            Completion completion = executeBody(function, frame);
+            // Nothing can refer to the frame anymore unless a closure declared in the function captured it
+            if (!function.declaration().captured) releaseFrame(frame);
+            if (completion != Completion.TAIL_CALL) {
+                globalCells = callerGlobalCells;
+                return completion == Completion.RETURN ? takeReturnValue() : null;
+            }
+
+            function = tailFunction;
+            frame = tailFrame;
+            tailFunction = null;
+            tailFrame = null;
+        }
+    }
+
     @Override
     public Object visitVariableExpression(Expression.Variable expression) {
-        return lookUpVariable(expression.name, expression);
+        if (expression.depth != Resolver.GLOBAL) {
+            return environment.getAt(expression.depth, expression.slot);
+        }
+        return globalCell(expression.name, expression.slot).value;
+    }
+
+    /**
+     * Cell of a global variable, looked up by name once per index and kept for the next access
+     *
+     * @param name  token of the variable
+     * @param index index of the global the resolver stored in the slot of the access
+     * @return cell holding the value of the variable
+     */
+    private GlobalCell globalCell(Token name, int index) {
+        GlobalCell cell = globalCells.get(index);
+        if (cell != null) return cell;
+
+        cell = globals.cell(name);
+        globalCells.put(index, cell);
+        return cell;
     }
 
     @Override
-    public Void visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+    public Completion visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
         evaluateExpression(statement.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStatement(Statement.Function statement) {
-        SimPalFunction function = new SimPalFunction(statement, environment);
-        environment.define(statement.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStatement(Statement.Function statement) {
+        SimPalFunction function = new SimPalFunction(statement, environment, globalCells);
+        if (statement.slot == Resolver.GLOBAL) {
+            environment.define(statement.name.lexeme(), function);
+        } else {
+            environment.define(statement.slot, function);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStatement(Statement.If statement) {
+    public Completion visitIfStatement(Statement.If statement) {
         if (isTruthy(evaluateExpression(statement.condition))) {
-            execute(statement.thenBranch);
+            return execute(statement.thenBranch);
         } else if (statement.elseBranch != null) {
-            execute(statement.elseBranch);
+            return execute(statement.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStatement(Statement.Print statement) {
+    public Completion visitPrintStatement(Statement.Print statement) {
         Object value = evaluateExpression(statement.expression);
-        if(outputFilePth == null || outputFilePth.isBlank()) {
-            System.out.println(stringify(value));
-        }
-        else {
-            try {
-                PrintWriter printWriter = new PrintWriter(new FileWriter(outputFilePth, true));
-                printWriter.println(stringify(value));
-                printWriter.close();
-            } catch (Exception e ) {
-                System.err.println("Exception: " + e.getMessage());
-                throw new IOError("Error while print in output file: " + outputFilePth, e);
-            }
-        }
-        return null;
+        outputSink.println(stringify(value));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStatement(Statement.Return statement) {
+    public Completion visitReturnStatement(Statement.Return statement) {
+        if (statement.tailCall) {
+            Expression.Call call = (Expression.Call) statement.value;
+            Object callee = evaluateExpression(call.callee);
+            if (callee instanceof SimPalFunction && ((SimPalFunction) callee).arity() == call.arguments.size()) {
+                // Set after the arguments are evaluated, as calls made by them finish their own tail calls first
+                Environment frame = enterFrame((SimPalFunction) callee, call.arguments);
+                if (budget.step()) budget.check(call.paren.line);
+                tailFunction = (SimPalFunction) callee;
+                tailFrame = frame;
+                return Completion.TAIL_CALL;
+            }
+            returnValue = call(callee, call);
+            return Completion.RETURN;
+        }
+
         Object value = null;
         if (statement.value != null) value = evaluateExpression(statement.value);
 
-        throw new SimPalReturn(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStatement(Statement.Var statement) {
+    public Completion visitVarStatement(Statement.Var statement) {
         Object value = null;
         if (statement.initializer != null) {
             value = evaluateExpression(statement.initializer);
         }
-        environment.define(statement.name.lexeme, value);
-        return null;
+        if (statement.slot == Resolver.GLOBAL) {
+            environment.define(statement.name.lexeme(), value);
+        } else {
+            environment.define(statement.slot, value);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStatement(Statement.While statement) {
+    public Completion visitWhileStatement(Statement.While statement) {
         while (isTruthy(evaluateExpression(statement.condition))) {
-            execute(statement.body);
+            if (budget.step()) budget.check(statement.keyword.line);
+            Completion completion = execute(statement.body);
+            if (completion != Completion.NORMAL) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStatement(Statement.Block statement) {
-        executeBlock(statement.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStatement(Statement.Block statement) {
+        if (statement.slotCount == 0) {
+            // No declarations, the statements run in the current environment
+            for (Statement inner : statement.statements) {
+                Completion completion = execute(inner);
+                if (completion != Completion.NORMAL) return completion;
+            }
+            return Completion.NORMAL;
+        }
+
+        if (statement.captured) {
+            return executeBlock(statement.statements, new Environment(environment, statement.slotCount));
+        }
+
+        // Nothing can refer to the frame once the block is done, so it is recycled, loop bodies reuse one frame
+        Environment frame = acquireFrame(environment, statement.slotCount);
+        Completion completion = executeBlock(statement.statements, frame);
+        releaseFrame(frame);
+        return completion;
+    }
+
+    private Environment acquireFrame(Environment enclosing, int size) {
+        if (pooledFrames > 0 && framePool[pooledFrames - 1].capacity() >= size) {
+            Environment frame = framePool[--pooledFrames];
+            framePool[pooledFrames] = null;
+            frame.reuse(enclosing);
+            return frame;
+        }
+        return new Environment(enclosing, Math.max(size, MIN_POOLED_FRAME));
     }
 
-    public void executeBlock(List<Statement> statements, Environment environment) {
+    private void releaseFrame(Environment frame) {
+        frame.clear();
+        if (pooledFrames == framePool.length) {
+            framePool = Arrays.copyOf(framePool, pooledFrames * 2);
+        }
+        framePool[pooledFrames++] = frame;
+    }
+
+    /**
+     * Executes statements in the given environment, stops at the first statement that does not complete normally
+     *
+     * @param statements  statements to be executed
+     * @param environment environment the statements are executed in
+     * @return {@link Completion#NORMAL} unless a return statement was executed, see {@link #invoke}
+     */
+    public Completion executeBlock(List<Statement> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Statement statement : statements) {
-                execute(statement);
+                Completion completion = execute(statement);
+                if (completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         } finally {
             this.environment = previous;
         }
     }
 
+    /**
+     * Hands over the value of the return statement that completed the last block
+     *
+     * @return returned value, nil if return had no value
+     */
+    public Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
     public void interpret(List<Statement> statements) {
+        budget.reset();
+        callDepth = 0;
+        globalCells = new GlobalCells();
         try {
             for (Statement statement : statements) {
                 execute(statement);
             }
         } catch (SimPalRuntimeError simPalRuntimeError) {
-            SimPal.runtimeError(simPalRuntimeError);
+            // Output printed before the error has to appear before it
+            outputSink.flush();
+            errors.runtimeError(simPalRuntimeError);
         }
     }
 
-    void resolve(Expression expression, int depth) {
-        locals.put(expression, depth);
+    /**
+     * Concatenates two strings, counting them against the string limit of the run
+     */
+    String concatenate(Expression.Binary expression, String left, String right) {
+        budget.allocateString(left.length() + right.length(), expression.operator.line);
+        return left + right;
     }
 
-    private Object lookUpVariable(Token name, Expression expression) {
-        Integer distance = locals.get(expression);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
-        } else {
-            return globals.get(name);
-        }
+    /**
+     * Executes a statement, every statement of the program goes through here, see {@link #executeBody} for calls
+     *
+     * @param statement statement to be executed
+     * @return how the statement completed
+     */
+    protected Completion execute(Statement statement) {
+        return statement.accept(this);
     }
 
-    private void execute(Statement statement) {
-        statement.accept(this);
+    /**
+     * Runs the body of one call, every call of a function written in SimPal goes through here, each tail call of
+     * {@link #invoke} as well
+     *
+     * @param function called function
+     * @param frame    frame holding the arguments of the call
+     * @return how the body completed
+     */
+    protected Completion executeBody(SimPalFunction function, Environment frame) {
+        return executeBlock(function.declaration().body, frame);
     }
 
     private String stringify(Object object) {
@@ -311,30 +447,103 @@ public class Interpreter implements Expression.Visitor<Object>, Statement.Visito
         return object.toString();
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
         throw new SimPalRuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
-        throw new SimPalRuntimeError(operator, "Operands must be numbers.");
+    Object evaluateExpression(Expression expression) {
+        return expression.accept(this);
     }
 
-    private Object evaluateExpression(Expression expression) {
-        return expression.accept(this);
+    /**
+     * Evaluates an expression that {@link Resolver#isNumeric(Expression)} accepts, nested numeric subexpressions are
+     * computed as primitive doubles so only the final result gets boxed
+     *
+     * @param expression numeric expression
+     * @return value of the expression
+     */
+    double evaluateDouble(Expression expression) {
+        if (expression instanceof Expression.Binary) {
+            Expression.Binary binary = (Expression.Binary) expression;
+            return node(binary).executeDouble(this, binary);
+        }
+
+        if (expression instanceof Expression.Unary) {
+            Expression.Unary unary = (Expression.Unary) expression;
+            return node(unary).executeDouble(this, unary);
+        }
+
+        if (expression instanceof Expression.Grouping) {
+            return evaluateDouble(((Expression.Grouping) expression).expression);
+        }
+
+        return (double) ((Expression.Literal) expression).value;
+    }
+
+    /**
+     * Node the expression runs with, a tree that did not go through the {@link Simplifier} runs with the node of the
+     * operator and is never specialized
+     */
+    private static BinaryNode node(Expression.Binary expression) {
+        if (expression instanceof SpecializedBinary) return ((SpecializedBinary) expression).node;
+        return BinaryNode.create(expression.operator.tokenType, expression.numeric);
+    }
+
+    private static UnaryNode node(Expression.Unary expression) {
+        if (expression instanceof SpecializedUnary) return ((SpecializedUnary) expression).node;
+        return UnaryNode.create(expression.operator.tokenType);
+    }
+
+    /**
+     * Evaluates both operands of a binary expression as numbers into {@link #leftOperand} and {@link #rightOperand},
+     * numeric operands are evaluated without boxing and the rest are checked once both sides are evaluated
+     *
+     * @param expression binary expression whose operands are evaluated
+     * @param message    error message in case an operand is not a number
+     */
+    void evaluateNumberOperands(Expression.Binary expression, String message) {
+        double leftNumber = 0;
+        double rightNumber = 0;
+        Object leftExpression = null;
+        Object rightExpression = null;
+
+        boolean leftNumeric = Resolver.isNumeric(expression.leftExpression);
+        if (leftNumeric) {
+            leftNumber = evaluateDouble(expression.leftExpression);
+        } else {
+            leftExpression = evaluateExpression(expression.leftExpression);
+        }
+        boolean rightNumeric = Resolver.isNumeric(expression.rightExpression);
+        if (rightNumeric) {
+            rightNumber = evaluateDouble(expression.rightExpression);
+        } else {
+            rightExpression = evaluateExpression(expression.rightExpression);
+        }
+
+        if (!leftNumeric) {
+            if (!(leftExpression instanceof Double)) {
+                throw new SimPalRuntimeError(expression.operator, message);
+            }
+            leftNumber = (double) leftExpression;
+        }
+        if (!rightNumeric) {
+            if (!(rightExpression instanceof Double)) {
+                throw new SimPalRuntimeError(expression.operator, message);
+            }
+            rightNumber = (double) rightExpression;
+        }
+
+        // Written only after both sides are evaluated, as evaluating them may use these fields as well
+        leftOperand = leftNumber;
+        rightOperand = rightNumber;
     }
 
-    private boolean isTruthy(Object object) {
+    boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private boolean isEqual(Object leftExpression, Object rightExpression) {
-        if (leftExpression == null && rightExpression == null) return true;
-        if (leftExpression == null) return false;
-        return leftExpression.equals(rightExpression);
-    }
 
 }
@@ -0,0 +1,142 @@
+package simpal.interpreter;
+
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.token.TokenType;
+
+/**
+ * Simplifies a resolved program like {@link Simplifier} and also evaluates what does not depend on the running
+ * program: operations on constants are folded into literals, branches that can never run and loops that never start
+ * are removed. An operation that would fail at runtime, such as a division by zero or adding a number to a string, is
+ * left as it is so it still fails with the same error when it is executed.
+ */
+public class Optimizer extends Simplifier {
+    // Constant strings are only concatenated when no limit has to count the characters of the result
+    private final boolean foldStrings;
+
+    public Optimizer() {
+        this(ExecutionLimits.NONE);
+    }
+
+    /**
+     * @param limits limits every run of the optimized program is given, with a string limit concatenations of
+     *               constant strings are left to run so the characters they build are still counted
+     */
+    public Optimizer(ExecutionLimits limits) {
+        this.foldStrings = limits.maxStringChars == 0;
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression left = simplify(expression.leftExpression);
+        Expression right = simplify(expression.rightExpression);
+
+        if (left instanceof Expression.Literal && right instanceof Expression.Literal) {
+            Object folded = fold(expression, ((Expression.Literal) left).value, ((Expression.Literal) right).value);
+            if (folded != null) return new Expression.Literal(folded);
+        }
+        return binary(expression, left, right);
+    }
+
+    @Override
+    public Expression visitLogicalExpression(Expression.Logical expression) {
+        Expression left = simplify(expression.leftExpression);
+        Expression right = simplify(expression.rightExpression);
+
+        if (left instanceof Expression.Literal) {
+            boolean truthy = isTruthy(((Expression.Literal) left).value);
+            switch (expression.operator.tokenType) {
+                case OR:
+                    return truthy ? left : right;
+                case AND:
+                    return truthy ? right : left;
+            }
+        }
+        return logical(expression, left, right);
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression right = simplify(expression.rightExpression);
+
+        if (right instanceof Expression.Literal) {
+            Object value = ((Expression.Literal) right).value;
+            switch (expression.operator.tokenType) {
+                case BANG:
+                    return new Expression.Literal(!isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double) return new Expression.Literal(-(double) value);
+                    break;
+            }
+        }
+        return unary(expression, right);
+    }
+
+    @Override
+    public Statement visitIfStatement(Statement.If statement) {
+        Expression condition = simplify(statement.condition);
+        if (condition instanceof Expression.Literal) {
+            Statement taken = isTruthy(((Expression.Literal) condition).value)
+                    ? statement.thenBranch : statement.elseBranch;
+            return taken == null ? null : taken.accept(this);
+        }
+        return ifStatement(statement, condition);
+    }
+
+    @Override
+    public Statement visitWhileStatement(Statement.While statement) {
+        Expression condition = simplify(statement.condition);
+        if (condition instanceof Expression.Literal && !isTruthy(((Expression.Literal) condition).value)) {
+            return null;
+        }
+        return whileStatement(statement, condition);
+    }
+
+    /**
+     * Computes a binary operation on two constants the way the {@link Interpreter} would
+     *
+     * @return result of the operation or null if it cannot be folded, including when it would fail at runtime
+     */
+    private Object fold(Expression.Binary expression, Object left, Object right) {
+        if (expression.operator.tokenType == TokenType.PLUS && left instanceof String && right instanceof String) {
+            return foldStrings ? (String) left + (String) right : null;
+        }
+        if (!(left instanceof Double) || !(right instanceof Double)) return null;
+
+        double leftNumber = (double) left;
+        double rightNumber = (double) right;
+        switch (expression.operator.tokenType) {
+            case PLUS:
+                return leftNumber + rightNumber;
+            case MINUS:
+                return leftNumber - rightNumber;
+            case STAR:
+                return leftNumber * rightNumber;
+            case SLASH:
+                // Division and remainder by zero throw when executed
+                return rightNumber == 0 ? null : leftNumber / rightNumber;
+            case MODULO:
+                return rightNumber == 0 ? null : leftNumber % rightNumber;
+            case GREATER:
+                return leftNumber > rightNumber;
+            case GREATER_EQUAL:
+                return leftNumber >= rightNumber;
+            case LESS:
+                return leftNumber < rightNumber;
+            case LESS_EQUAL:
+                return leftNumber <= rightNumber;
+            case EQUAL_EQUAL:
+                return Double.doubleToLongBits(leftNumber) == Double.doubleToLongBits(rightNumber);
+            case BANG_EQUAL:
+                return Double.doubleToLongBits(leftNumber) != Double.doubleToLongBits(rightNumber);
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+}
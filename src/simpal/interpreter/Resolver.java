@@ -1,9 +1,10 @@
 package simpal.interpreter;
 
-import simpal.SimPal;
+import simpal.errors.ErrorReporter;
 import simpal.lang.Expression;
 import simpal.lang.Statement;
 import simpal.token.Token;
+import simpal.token.TokenType;
 
 import java.util.HashMap;
 import java.util.List;
@@ -14,12 +15,30 @@ import java.util.Stack;
  * This class visits very node of the syntax tree and kind of performs semantic analysis
  */
 public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final ErrorReporter errors;
+    private final GlobalNames globalNames;
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    // Number of function declarations resolved so far, used to find blocks that closures can capture
+    private int functionCount = 0;
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    /**
+     * Marks declarations and variable accesses that refer to the global environment instead of a local frame
+     */
+    public static final int GLOBAL = -1;
+
+    public Resolver(ErrorReporter errors) {
+        this(errors, new GlobalNames());
+    }
+
+    /**
+     * @param errors      reporter of resolution errors
+     * @param globalNames indexes of the globals, shared with the declarations resolved before that run in the same
+     *                    program
+     */
+    public Resolver(ErrorReporter errors, GlobalNames globalNames) {
+        this.errors = errors;
+        this.globalNames = globalNames;
     }
 
     private enum FunctionType {
@@ -27,13 +46,27 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
         FUNCTION
     }
 
+    /**
+     * A variable declared in a local scope, its slot in the scope frame and whether its initializer is resolved
+     */
+    private static class Local {
+        final int slot;
+        boolean defined = false;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+    }
+
     @Override
     public Void visitVariableExpression(Expression.Variable expression) {
-        if (!scopes.isEmpty() && scopes.peek().get(expression.name.lexeme) == Boolean.FALSE) {
-            SimPal.error(expression.name,
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expression.name.lexeme()) &&
+                !scopes.peek().get(expression.name.lexeme()).defined) {
+            errors.error(expression.name,
                     "Can't read local variable in its own initializer.");
         }
-        resolveLocal(expression, expression.name);
+        expression.depth = resolveDepth(expression.name);
+        expression.slot = resolveSlot(expression.name, expression.depth);
         return null;
     }
 
@@ -42,6 +75,18 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
         resolve(expression.leftExpression);
         resolve(expression.rightExpression);
 
+        switch (expression.operator.tokenType) {
+            case MINUS:
+            case SLASH:
+            case MODULO:
+            case STAR:
+                expression.numeric = true;
+                break;
+            case PLUS:
+                // Once one side is a number the other has to be a number as well, or it is a runtime error
+                expression.numeric = isNumeric(expression.leftExpression) || isNumeric(expression.rightExpression);
+                break;
+        }
         return null;
     }
 
@@ -79,6 +124,7 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     @Override
     public Void visitUnaryExpression(Expression.Unary expression) {
         resolve(expression.rightExpression);
+        expression.numeric = expression.operator.tokenType == TokenType.MINUS;
         return null;
     }
 
@@ -109,19 +155,22 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     @Override
     public Void visitReturnStatement(Statement.Return statement) {
         if (currentFunction == FunctionType.NONE) {
-            SimPal.error(statement.keyword, "Can't return from top-level code.");
+            errors.error(statement.keyword, "Can't return from top-level code.");
         }
 
         if (statement.value != null) {
             resolve(statement.value);
         }
+        // Nothing is left to do in the function after the call, so the call can take over the frame of the function
+        statement.tailCall = statement.value instanceof Expression.Call;
         return null;
     }
 
     @Override
     public Void visitAssignExpression(Expression.Assign expression) {
         resolve(expression.value);
-        resolveLocal(expression, expression.name);
+        expression.depth = resolveDepth(expression.name);
+        expression.slot = resolveSlot(expression.name, expression.depth);
         return null;
     }
 
@@ -133,15 +182,23 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
 
     @Override
     public Void visitBlockStatement(Statement.Block statement) {
-        beginScope();
-        resolve(statement.statements);
-        endScope();
+        int functionsBefore = functionCount;
+        if (declaresLocals(statement.statements)) {
+            beginScope();
+            resolve(statement.statements);
+            statement.slotCount = endScope();
+        } else {
+            // Without declarations the block needs no scope of its own, slotCount 0 tells the interpreter so
+            resolve(statement.statements);
+            statement.slotCount = 0;
+        }
+        statement.captured = functionCount != functionsBefore;
         return null;
     }
 
     @Override
     public Void visitVarStatement(Statement.Var statement) {
-        declare(statement.name);
+        statement.slot = declare(statement.name);
         if (statement.initializer != null) {
             resolve(statement.initializer);
         }
@@ -151,9 +208,10 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
 
     @Override
     public Void visitFunctionStatement(Statement.Function statement) {
-        declare(statement.name);
+        statement.slot = declare(statement.name);
         define(statement.name);
 
+        functionCount++;
         resolveFunction(statement, FunctionType.FUNCTION);
         return null;
     }
@@ -165,20 +223,24 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
     }
 
     /**
-     * Adds variable name to the innermost scope, false in the map means that variable initializer is resolved or not
+     * Adds variable name to the innermost scope as not yet defined and gives it the next free slot of that scope
      *
      * @param name Token that is being declared
+     * @return slot of the variable in its scope frame or {@link #GLOBAL} if it is declared at top level
      */
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
-        Map<String, Boolean> scope = scopes.peek();
+    private int declare(Token name) {
+        if (scopes.isEmpty()) return GLOBAL;
+        Map<String, Local> scope = scopes.peek();
 
-        if (scope.containsKey(name.lexeme)) {
-            SimPal.error(name,
+        if (scope.containsKey(name.lexeme())) {
+            errors.error(name,
                     "Already a variable with this name in this scope.");
+            return scope.get(name.lexeme()).slot;
         }
 
-        scope.put(name.lexeme, false);
+        Local local = new Local(scope.size());
+        scope.put(name.lexeme(), local);
+        return local.slot;
     }
 
     /**
@@ -188,16 +250,58 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
      */
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme()).defined = true;
     }
 
-    private void resolveLocal(Expression expression, Token name) {
+    /**
+     * Checks if any of the statements declares a variable or function directly in the enclosing scope
+     *
+     * @param statements statements of a block
+     * @return true if the block needs a scope of its own
+     */
+    private static boolean declaresLocals(List<Statement> statements) {
+        for (Statement statement : statements) {
+            if (statement instanceof Statement.Var || statement instanceof Statement.Function) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an already resolved expression can only evaluate to a number ( or fail with a runtime error ),
+     * such expressions are evaluated by the {@link Interpreter} without boxing intermediate results
+     *
+     * @param expression resolved expression
+     * @return true if the expression always produces a number
+     */
+    static boolean isNumeric(Expression expression) {
+        if (expression instanceof Expression.Binary) return ((Expression.Binary) expression).numeric;
+        if (expression instanceof Expression.Unary) return ((Expression.Unary) expression).numeric;
+        if (expression instanceof Expression.Grouping) return isNumeric(((Expression.Grouping) expression).expression);
+        if (expression instanceof Expression.Literal) return ((Expression.Literal) expression).value instanceof Double;
+        return false;
+    }
+
+    /**
+     * Finds the innermost scope that declares the variable
+     *
+     * @param name Token of the variable being accessed
+     * @return number of scopes between the access and the declaration or {@link #GLOBAL} if no local scope declares it
+     */
+    private int resolveDepth(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expression, scopes.size() - 1 - i);
-                return;
+            if (scopes.get(i).containsKey(name.lexeme())) {
+                return scopes.size() - 1 - i;
             }
         }
+        return GLOBAL;
+    }
+
+    /**
+     * @return slot of the variable in the frame of its scope or, for a global, its index in the {@link GlobalNames}
+     */
+    private int resolveSlot(Token name, int depth) {
+        if (depth == GLOBAL) return globalNames.index(name.lexeme());
+        return scopes.get(scopes.size() - 1 - depth).get(name.lexeme()).slot;
     }
 
     private void beginScope() {
@@ -221,12 +325,20 @@ public class Resolver implements Expression.Visitor<Void>, Statement.Visitor<Voi
             declare(param);
             define(param);
         }
+        int functionsBefore = functionCount;
         resolve(function.body);
-        endScope();
+        function.slotCount = endScope();
+        // Only a function declared in the body can keep the frame of a call alive after it returns
+        function.captured = functionCount != functionsBefore;
         currentFunction = enclosingFunction;
     }
 
-    private void endScope() {
-        scopes.pop();
+    /**
+     * Closes the innermost scope
+     *
+     * @return number of slots the frame of the closed scope needs
+     */
+    private int endScope() {
+        return scopes.pop().size();
     }
 }
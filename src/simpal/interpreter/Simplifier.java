@@ -0,0 +1,243 @@
+package simpal.interpreter;
+
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.token.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a resolved program into the tree that is executed: groupings are dropped as the tree already encodes
+ * precedence, and blocks that declare nothing, which the {@link Resolver} gives no scope, are replaced by their
+ * statements. The parsed tree is left as it is for {@link simpal.debugger.ASTPrinter} and the AST cache.
+ * <p>
+ * Nodes are never changed, a node with a simplified child is copied along with what the {@link Resolver} recorded on it.
+ * Binary and unary expressions are always copied, the copy carries the node the {@link Interpreter} runs it with.
+ * A visit of a statement returns null if the statement can be left out.
+ */
+public class Simplifier implements Expression.Visitor<Expression>, Statement.Visitor<Statement> {
+
+    /**
+     * Simplifies the resolved top level statements
+     *
+     * @param statements resolved program
+     * @return program to execute
+     */
+    public List<Statement> simplify(List<Statement> statements) {
+        return simplifyAll(statements);
+    }
+
+    @Override
+    public Expression visitAssignExpression(Expression.Assign expression) {
+        Expression value = simplify(expression.value);
+        if (value == expression.value) return expression;
+
+        Expression.Assign assign = new Expression.Assign(expression.name, value);
+        assign.depth = expression.depth;
+        assign.slot = expression.slot;
+        return assign;
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        return binary(expression, simplify(expression.leftExpression), simplify(expression.rightExpression));
+    }
+
+    @Override
+    public Expression visitCallExpression(Expression.Call expression) {
+        Expression callee = simplify(expression.callee);
+        boolean changed = callee != expression.callee;
+
+        List<Expression> arguments = new ArrayList<>(expression.arguments.size());
+        for (Expression argument : expression.arguments) {
+            Expression simplified = simplify(argument);
+            changed |= simplified != argument;
+            arguments.add(simplified);
+        }
+
+        if (!changed) return expression;
+        return new Expression.Call(callee, expression.paren, arguments);
+    }
+
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        return simplify(expression.expression);
+    }
+
+    @Override
+    public Expression visitLiteralExpression(Expression.Literal expression) {
+        return expression;
+    }
+
+    @Override
+    public Expression visitLogicalExpression(Expression.Logical expression) {
+        return logical(expression, simplify(expression.leftExpression), simplify(expression.rightExpression));
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        return unary(expression, simplify(expression.rightExpression));
+    }
+
+    @Override
+    public Expression visitVariableExpression(Expression.Variable expression) {
+        return expression;
+    }
+
+    @Override
+    public Statement visitBlockStatement(Statement.Block statement) {
+        List<Statement> statements = simplifyAll(statement.statements);
+        if (statement.slotCount == 0) {
+            // The block has no scope, its statements can run wherever it is
+            if (statements.isEmpty()) return null;
+            if (statements.size() == 1) return statements.get(0);
+        }
+        if (sameStatements(statements, statement.statements)) return statement;
+
+        Statement.Block block = new Statement.Block(statements);
+        block.slotCount = statement.slotCount;
+        block.captured = statement.captured;
+        return block;
+    }
+
+    @Override
+    public Statement visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+        Expression expression = simplify(statement.expression);
+        if (expression == statement.expression) return statement;
+        return new Statement.CompleteExpression(expression);
+    }
+
+    @Override
+    public Statement visitFunctionStatement(Statement.Function statement) {
+        List<Statement> body = simplifyAll(statement.body);
+        if (sameStatements(body, statement.body)) return statement;
+
+        Statement.Function function = new Statement.Function(statement.name, statement.params, body);
+        function.slot = statement.slot;
+        function.slotCount = statement.slotCount;
+        function.captured = statement.captured;
+        return function;
+    }
+
+    @Override
+    public Statement visitIfStatement(Statement.If statement) {
+        return ifStatement(statement, simplify(statement.condition));
+    }
+
+    @Override
+    public Statement visitPrintStatement(Statement.Print statement) {
+        Expression expression = simplify(statement.expression);
+        if (expression == statement.expression) return statement;
+        return new Statement.Print(expression);
+    }
+
+    @Override
+    public Statement visitReturnStatement(Statement.Return statement) {
+        if (statement.value == null) return statement;
+        Expression value = simplify(statement.value);
+        if (value == statement.value) return statement;
+
+        Statement.Return simplified = new Statement.Return(statement.keyword, value);
+        // A call that was in parentheses is in tail position once they are dropped
+        simplified.tailCall = value instanceof Expression.Call;
+        return simplified;
+    }
+
+    @Override
+    public Statement visitVarStatement(Statement.Var statement) {
+        if (statement.initializer == null) return statement;
+        Expression initializer = simplify(statement.initializer);
+        if (initializer == statement.initializer) return statement;
+
+        Statement.Var var = new Statement.Var(statement.name, initializer);
+        var.slot = statement.slot;
+        return var;
+    }
+
+    @Override
+    public Statement visitWhileStatement(Statement.While statement) {
+        return whileStatement(statement, simplify(statement.condition));
+    }
+
+    Expression simplify(Expression expression) {
+        return expression.accept(this);
+    }
+
+    /**
+     * Simplifies a statement that has to stay in place, a statement that is left out becomes an empty block
+     */
+    Statement simplifyBranch(Statement statement) {
+        Statement simplified = simplifyStatement(statement);
+        if (simplified != null) return simplified;
+        Statement.Block empty = new Statement.Block(new ArrayList<>());
+        empty.line = statement.line;
+        return empty;
+    }
+
+    /**
+     * Simplifies a statement, a statement that replaces it starts on the same line unless it was already placed
+     */
+    private Statement simplifyStatement(Statement statement) {
+        Statement simplified = statement.accept(this);
+        if (simplified != null && simplified != statement && simplified.line == 0) simplified.line = statement.line;
+        return simplified;
+    }
+
+    /**
+     * Simplifies a list of statements, blocks without a scope are spliced in
+     */
+    List<Statement> simplifyAll(List<Statement> statements) {
+        List<Statement> simplified = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            Statement result = simplifyStatement(statement);
+            if (result == null) continue;
+            if (result instanceof Statement.Block && ((Statement.Block) result).slotCount == 0) {
+                simplified.addAll(((Statement.Block) result).statements);
+            } else {
+                simplified.add(result);
+            }
+        }
+        return simplified;
+    }
+
+    Expression binary(Expression.Binary expression, Expression left, Expression right) {
+        // A side of '+' that became a number makes the addition numeric, see Resolver#visitBinaryExpression
+        boolean numeric = expression.numeric || expression.operator.tokenType == TokenType.PLUS
+                && (Resolver.isNumeric(left) || Resolver.isNumeric(right));
+        return new SpecializedBinary(left, expression.operator, right, numeric);
+    }
+
+    Expression logical(Expression.Logical expression, Expression left, Expression right) {
+        if (left == expression.leftExpression && right == expression.rightExpression) return expression;
+        return new Expression.Logical(left, expression.operator, right);
+    }
+
+    Expression unary(Expression.Unary expression, Expression right) {
+        return new SpecializedUnary(expression.operator, right, expression.numeric);
+    }
+
+    Statement ifStatement(Statement.If statement, Expression condition) {
+        Statement thenBranch = simplifyBranch(statement.thenBranch);
+        Statement elseBranch = statement.elseBranch == null ? null : simplifyBranch(statement.elseBranch);
+        if (condition == statement.condition && thenBranch == statement.thenBranch
+                && elseBranch == statement.elseBranch) {
+            return statement;
+        }
+        return new Statement.If(condition, thenBranch, elseBranch);
+    }
+
+    Statement whileStatement(Statement.While statement, Expression condition) {
+        Statement body = simplifyBranch(statement.body);
+        if (condition == statement.condition && body == statement.body) return statement;
+        return new Statement.While(statement.keyword, condition, body);
+    }
+
+    private static boolean sameStatements(List<Statement> simplified, List<Statement> original) {
+        if (simplified.size() != original.size()) return false;
+        for (int i = 0; i < simplified.size(); i++) {
+            if (simplified.get(i) != original.get(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package simpal.interpreter;
+
+import simpal.lang.Expression;
+import simpal.token.Token;
+
+/**
+ * Binary expression of the executed tree together with the node it runs with, made by the {@link Simplifier} so the
+ * parsed tree is never rewritten. A compiled program shares it between the runs on every thread, see {@link BinaryNode}
+ * for why a rewrite one of them makes is safe for the others.
+ */
+final class SpecializedBinary extends Expression.Binary {
+    BinaryNode node;
+
+    SpecializedBinary(Expression leftExpression, Token operator, Expression rightExpression, boolean numeric) {
+        super(leftExpression, operator, rightExpression);
+        this.numeric = numeric;
+        this.node = BinaryNode.create(operator.tokenType, numeric);
+    }
+}
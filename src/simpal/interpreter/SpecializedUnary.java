@@ -0,0 +1,17 @@
+package simpal.interpreter;
+
+import simpal.lang.Expression;
+import simpal.token.Token;
+
+/**
+ * Unary expression of the executed tree together with the node it runs with, made by the {@link Simplifier}
+ */
+final class SpecializedUnary extends Expression.Unary {
+    final UnaryNode node;
+
+    SpecializedUnary(Token operator, Expression rightExpression, boolean numeric) {
+        super(operator, rightExpression);
+        this.numeric = numeric;
+        this.node = UnaryNode.create(operator.tokenType);
+    }
+}
@@ -0,0 +1,63 @@
+package simpal.interpreter;
+
+import simpal.lang.Expression;
+import simpal.token.TokenType;
+
+/**
+ * Executable behaviour of an {@link Expression.Unary}, picked by the {@link Simplifier} from the operator
+ */
+public abstract class UnaryNode {
+    private static final UnaryNode NEGATE_DOUBLE = new NegateDouble();
+    private static final UnaryNode NOT = new Not();
+    private static final UnaryNode NIL = new Nil();
+
+    public static UnaryNode create(TokenType operator) {
+        switch (operator) {
+            case MINUS:
+                return NEGATE_DOUBLE;
+            case BANG:
+                return NOT;
+            default:
+                return NIL;
+        }
+    }
+
+    abstract Object execute(Interpreter interpreter, Expression.Unary expression);
+
+    double executeDouble(Interpreter interpreter, Expression.Unary expression) {
+        return (double) execute(interpreter, expression);
+    }
+
+    private static class NegateDouble extends UnaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Unary expression) {
+            return executeDouble(interpreter, expression);
+        }
+
+        @Override
+        double executeDouble(Interpreter interpreter, Expression.Unary expression) {
+            if (Resolver.isNumeric(expression.rightExpression)) {
+                return -interpreter.evaluateDouble(expression.rightExpression);
+            }
+
+            Object right = interpreter.evaluateExpression(expression.rightExpression);
+            interpreter.checkNumberOperand(expression.operator, right);
+            return -(double) right;
+        }
+    }
+
+    private static class Not extends UnaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Unary expression) {
+            return !interpreter.isTruthy(interpreter.evaluateExpression(expression.rightExpression));
+        }
+    }
+
+    private static class Nil extends UnaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expression.Unary expression) {
+            interpreter.evaluateExpression(expression.rightExpression);
+            return null;
+        }
+    }
+}
@@ -36,6 +36,8 @@ public abstract class Expression {
 
         public final Token name;
         public final Expression value;
+        public int depth;
+        public int slot;
     }
 
     public static class Binary extends Expression {
@@ -53,6 +55,7 @@ public abstract class Expression {
         public final Expression leftExpression;
         public final Token operator;
         public final Expression rightExpression;
+        public boolean numeric;
     }
 
     public static class Call extends Expression {
@@ -128,6 +131,7 @@ public abstract class Expression {
 
         public final Token operator;
         public final Expression rightExpression;
+        public boolean numeric;
     }
 
     public static class Variable extends Expression {
@@ -141,6 +145,8 @@ public abstract class Expression {
         }
 
         public final Token name;
+        public int depth;
+        public int slot;
     }
 
     public abstract <R> R accept(Visitor<R> visitor);
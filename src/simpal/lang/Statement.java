@@ -5,6 +5,9 @@ import simpal.token.Token;
 import java.util.List;
 
 public abstract class Statement {
+    // Line the statement starts on, set by the parser
+    public int line;
+
     public interface Visitor<R> {
         R visitBlockStatement(Block statement);
 
@@ -34,6 +37,8 @@ public abstract class Statement {
         }
 
         public final List<Statement> statements;
+        public int slotCount;
+        public boolean captured;
     }
 
     public static class CompleteExpression extends Statement {
@@ -64,6 +69,9 @@ public abstract class Statement {
         public final Token name;
         public final List<Token> params;
         public final List<Statement> body;
+        public int slot;
+        public int slotCount;
+        public boolean captured;
     }
 
     public static class If extends Statement {
@@ -109,6 +117,7 @@ public abstract class Statement {
 
         public final Token keyword;
         public final Expression value;
+        public boolean tailCall;
     }
 
     public static class Var extends Statement {
@@ -124,10 +133,12 @@ public abstract class Statement {
 
         public final Token name;
         public final Expression initializer;
+        public int slot;
     }
 
     public static class While extends Statement {
-        public While(Expression condition, Statement body) {
+        public While(Token keyword, Expression condition, Statement body) {
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
@@ -137,6 +148,7 @@ public abstract class Statement {
             return visitor.visitWhileStatement(this);
         }
 
+        public final Token keyword;
         public final Expression condition;
         public final Statement body;
     }
@@ -0,0 +1,37 @@
+package simpal.output;
+
+import java.io.PrintStream;
+
+/**
+ * Prints to a console stream, lines are collected in a buffer and written together instead of one write per line
+ */
+public class ConsoleSink implements OutputSink {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PrintStream stream;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+
+    public ConsoleSink(PrintStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void println(String line) {
+        buffer.append(line).append(System.lineSeparator());
+        if (buffer.length() >= BUFFER_SIZE) flush();
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.length() == 0) return;
+        stream.print(buffer);
+        stream.flush();
+        buffer.setLength(0);
+    }
+
+    @Override
+    public void close() {
+        // The console stream is not ours to close
+        flush();
+    }
+}
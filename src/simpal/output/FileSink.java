@@ -0,0 +1,68 @@
+package simpal.output;
+
+import simpal.errors.IOError;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Writes the output into a file that is truncated and opened once, lines go through a large buffer
+ */
+public class FileSink implements OutputSink {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String outputFilePath;
+    private final Writer writer;
+    // Lines after which the buffer is written out even if it is not full, 0 to only flush when it is full
+    private final int flushEveryLines;
+    private int pendingLines = 0;
+
+    /**
+     * @param outputFilePath  file to write to, its previous content is discarded
+     * @param flushEveryLines flush after this many lines, 0 to flush only when the buffer is full or the run ends
+     */
+    public FileSink(String outputFilePath, int flushEveryLines) {
+        this.outputFilePath = outputFilePath;
+        this.flushEveryLines = flushEveryLines;
+        try {
+            writer = new BufferedWriter(Files.newBufferedWriter(Paths.get(outputFilePath), Charset.defaultCharset()),
+                    BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new IOError("Error while opening output file: " + outputFilePath, e);
+        }
+    }
+
+    @Override
+    public void println(String line) {
+        try {
+            writer.write(line);
+            writer.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new IOError("Error while print in output file: " + outputFilePath, e);
+        }
+        if (flushEveryLines > 0 && ++pendingLines >= flushEveryLines) flush();
+    }
+
+    @Override
+    public void flush() {
+        pendingLines = 0;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new IOError("Error while print in output file: " + outputFilePath, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IOError("Error while closing output file: " + outputFilePath, e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package simpal.output;
+
+/**
+ * Destination of everything a program prints, opened once per run instead of once per print statement
+ */
+public interface OutputSink {
+    /**
+     * Writes one line, the line may stay in a buffer until {@link #flush()} is called
+     *
+     * @param line text to be written without the line separator
+     */
+    void println(String line);
+
+    /**
+     * Writes out any buffered lines, called at the end of every run and before errors are reported
+     */
+    void flush();
+
+    /**
+     * Flushes and releases the destination, nothing can be written afterwards
+     */
+    void close();
+}
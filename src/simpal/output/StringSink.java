@@ -0,0 +1,33 @@
+package simpal.output;
+
+/**
+ * Keeps everything printed in memory, for programs whose output is handed to the caller instead of being written out
+ */
+public class StringSink implements OutputSink {
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Override
+    public void println(String line) {
+        buffer.append(line).append('\n');
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to write out
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the output stays readable
+    }
+
+    /**
+     * Everything printed so far, every line ends with a line feed
+     *
+     * @return printed text
+     */
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,367 @@
+package simpal.parser;
+
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.GlobalNames;
+import simpal.interpreter.Resolver;
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.scanner.Scanner;
+import simpal.token.Token;
+import simpal.token.TokenSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a source and its parsed and resolved top level declarations up to date as the source is edited. An edit only
+ * scans and parses again the declarations it touches, scanning stops as soon as the parser is back at the start of a
+ * declaration that lies after the edit, that declaration and every one after it are reused as they are. Top level
+ * declarations are resolved independently of each other, globals are late bound, so only the parsed ones are
+ * resolved again.
+ */
+public class IncrementalParser {
+
+    /**
+     * One top level declaration and where it is in the source
+     */
+    private static final class Unit {
+        // Offset of the first character of the first token and offset after the last token of the declaration
+        int start;
+        int end;
+        // Line the last token is on, scanning after the declaration continues on this line
+        int endLine;
+        // Null if the declaration did not parse
+        Statement statement;
+        boolean hadError;
+    }
+
+    private final ErrorReporter errors;
+    // Declarations are resolved one at a time, they still have to number their globals the same way
+    private final GlobalNames globalNames = new GlobalNames();
+    private String source;
+    private List<Unit> units = List.of();
+    private int reparsedUnits = 0;
+    // Whether scanning after the last declaration reported errors
+    private boolean trailingErrors = false;
+
+    /**
+     * @param source source code
+     * @param errors reporter of the errors of every declaration that is parsed
+     */
+    public IncrementalParser(String source, ErrorReporter errors) {
+        this.errors = errors;
+        this.source = source;
+        this.units = parseFrom(0, 1, -1, List.of(), 0, 0);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Replaces a range of the source, errors of the declarations that are parsed again are reported as they are found
+     *
+     * @param offset        offset of the first replaced character
+     * @param removedLength number of characters replaced
+     * @param insertedText  text that takes their place
+     */
+    public void edit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > source.length()) {
+            throw new IndexOutOfBoundsException("Edit outside of the source.");
+        }
+
+        int editEnd = offset + removedLength;
+        int delta = insertedText.length() - removedLength;
+        int lineDelta = countLines(insertedText) - countLines(source.substring(offset, editEnd));
+        source = source.substring(0, offset) + insertedText + source.substring(editEnd);
+
+        // A token that ends right where the edit starts might get longer, so its declaration is parsed again too
+        int first = 0;
+        while (first < units.size() && units.get(first).end < offset) first++;
+
+        int scanFrom = first > 0 ? units.get(first - 1).end : 0;
+        int scanLine = first > 0 ? units.get(first - 1).endLine : 1;
+        units = parseFrom(scanFrom, scanLine, editEnd, units.subList(first, units.size()), delta, lineDelta);
+    }
+
+    /**
+     * All statements of the source, only meant to be executed when {@link #hasErrors()} is false
+     *
+     * @return resolved top level statements
+     */
+    public List<Statement> statements() {
+        List<Statement> statements = new ArrayList<>(units.size());
+        for (Unit unit : units) {
+            if (unit.statement != null) statements.add(unit.statement);
+        }
+        return statements;
+    }
+
+    public boolean hasErrors() {
+        if (trailingErrors) return true;
+        for (Unit unit : units) {
+            if (unit.hadError) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Number of top level declarations parsed by the last edit, or by the constructor if nothing was edited yet
+     *
+     * @return declarations parsed
+     */
+    public int reparsedUnits() {
+        return reparsedUnits;
+    }
+
+    /**
+     * Parses declarations starting at the offset until the source ends or the parser reaches a declaration after the
+     * edit, from there on the old declarations are taken over
+     *
+     * @param offset    offset in the new source to start at, between two declarations
+     * @param line      line the offset is on
+     * @param editEnd   offset in the old source just after the replaced range, -1 if there is nothing to take over
+     * @param old       declarations of the old source at and after the offset
+     * @param delta     difference between new and old offsets after the edit
+     * @param lineDelta difference between new and old lines after the edit
+     * @return every declaration of the new source
+     */
+    private List<Unit> parseFrom(int offset, int line, int editEnd, List<Unit> old, int delta, int lineDelta) {
+        List<Unit> parsed = new ArrayList<>(units.subList(0, units.size() - old.size()));
+        ErrorCountingTokens tokens = new ErrorCountingTokens(new Scanner(source, offset, line, errors), errors);
+        Parser parser = new Parser(tokens, errors);
+        reparsedUnits = 0;
+
+        int reuse = 0;
+        // Errors of the token the parser looks at, they belong to the declaration that token starts
+        int lookaheadErrors = tokens.lastTokenErrors;
+        while (!parser.isAtEnd()) {
+            int next = parser.peekCurrentToken().offset();
+            // Skips the old declarations that the parser has gone past
+            while (reuse < old.size() && old.get(reuse).start + delta < next) reuse++;
+            if (reuse < old.size() && editEnd >= 0 && old.get(reuse).start >= editEnd
+                    && old.get(reuse).start + delta == next) {
+                break;
+            }
+
+            Unit unit = new Unit();
+            unit.start = next;
+            int errorsBefore = errors.errorCount();
+            unit.statement = parser.declaration();
+            Token last = parser.getPreviousToken();
+            unit.end = last.endOffset();
+            unit.endLine = last.line;
+
+            // Parsing scanned the first token of the next declaration as well, its errors are not this declaration's
+            int unitErrors = lookaheadErrors + errors.errorCount() - errorsBefore - tokens.lastTokenErrors;
+            lookaheadErrors = tokens.lastTokenErrors;
+            if (unit.statement != null && unitErrors == 0) {
+                int errorsBeforeResolving = errors.errorCount();
+                List<Statement> statements = new ArrayList<>(1);
+                statements.add(unit.statement);
+                new Resolver(errors, globalNames).resolve(statements);
+                unitErrors += errors.errorCount() - errorsBeforeResolving;
+            }
+            unit.hadError = unitErrors != 0;
+            parsed.add(unit);
+            reparsedUnits++;
+        }
+
+        if (parser.isAtEnd()) {
+            // Errors scanning the source after the last declaration, such as an unterminated string
+            trailingErrors = lookaheadErrors != 0;
+        } else {
+            // Statements handed out before are left as they are, they may still be compiled or running
+            LineMover mover = new LineMover(delta, lineDelta);
+            for (Unit unit : old.subList(reuse, old.size())) {
+                unit.start += delta;
+                unit.end += delta;
+                unit.endLine += lineDelta;
+                if (lineDelta != 0 && unit.statement != null) unit.statement = mover.move(unit.statement);
+                parsed.add(unit);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Counts the errors the scanner reports for each token, so they can be told apart from parsing errors
+     */
+    private static final class ErrorCountingTokens implements TokenSource {
+        private final Scanner scanner;
+        private final ErrorReporter errors;
+        int lastTokenErrors = 0;
+
+        ErrorCountingTokens(Scanner scanner, ErrorReporter errors) {
+            this.scanner = scanner;
+            this.errors = errors;
+        }
+
+        @Override
+        public Token nextToken() {
+            int errorsBefore = errors.errorCount();
+            Token token = scanner.nextToken();
+            lastTokenErrors = errors.errorCount() - errorsBefore;
+            return token;
+        }
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * Copies a reused declaration to the lines its text is on after the edit, so errors and profiles keep reporting the
+     * right line. The copy keeps what the {@link Resolver} recorded, its tokens are copies at their new offsets.
+     */
+    private static final class LineMover implements Expression.Visitor<Expression>, Statement.Visitor<Statement> {
+        private final int delta;
+        private final int lineDelta;
+
+        LineMover(int delta, int lineDelta) {
+            this.delta = delta;
+            this.lineDelta = lineDelta;
+        }
+
+        Statement move(Statement statement) {
+            if (statement == null) return null;
+            Statement moved = statement.accept(this);
+            moved.line = statement.line + lineDelta;
+            return moved;
+        }
+
+        private Expression move(Expression expression) {
+            return expression != null ? expression.accept(this) : null;
+        }
+
+        private Token move(Token token) {
+            return new Token(token.tokenType, token.lexeme(), token.offset() + delta, token.literal,
+                    token.line + lineDelta);
+        }
+
+        private List<Statement> moveStatements(List<Statement> statements) {
+            List<Statement> moved = new ArrayList<>(statements.size());
+            for (Statement statement : statements) {
+                moved.add(move(statement));
+            }
+            return moved;
+        }
+
+        @Override
+        public Expression visitAssignExpression(Expression.Assign expression) {
+            Expression.Assign assign = new Expression.Assign(move(expression.name), move(expression.value));
+            assign.depth = expression.depth;
+            assign.slot = expression.slot;
+            return assign;
+        }
+
+        @Override
+        public Expression visitBinaryExpression(Expression.Binary expression) {
+            Expression.Binary binary = new Expression.Binary(move(expression.leftExpression),
+                    move(expression.operator), move(expression.rightExpression));
+            binary.numeric = expression.numeric;
+            return binary;
+        }
+
+        @Override
+        public Expression visitCallExpression(Expression.Call expression) {
+            List<Expression> arguments = new ArrayList<>(expression.arguments.size());
+            for (Expression argument : expression.arguments) {
+                arguments.add(move(argument));
+            }
+            return new Expression.Call(move(expression.callee), move(expression.paren), arguments);
+        }
+
+        @Override
+        public Expression visitGroupingExpression(Expression.Grouping expression) {
+            return new Expression.Grouping(move(expression.expression));
+        }
+
+        @Override
+        public Expression visitLiteralExpression(Expression.Literal expression) {
+            return expression;
+        }
+
+        @Override
+        public Expression visitLogicalExpression(Expression.Logical expression) {
+            return new Expression.Logical(move(expression.leftExpression), move(expression.operator),
+                    move(expression.rightExpression));
+        }
+
+        @Override
+        public Expression visitUnaryExpression(Expression.Unary expression) {
+            Expression.Unary unary = new Expression.Unary(move(expression.operator), move(expression.rightExpression));
+            unary.numeric = expression.numeric;
+            return unary;
+        }
+
+        @Override
+        public Expression visitVariableExpression(Expression.Variable expression) {
+            Expression.Variable variable = new Expression.Variable(move(expression.name));
+            variable.depth = expression.depth;
+            variable.slot = expression.slot;
+            return variable;
+        }
+
+        @Override
+        public Statement visitBlockStatement(Statement.Block statement) {
+            Statement.Block block = new Statement.Block(moveStatements(statement.statements));
+            block.slotCount = statement.slotCount;
+            block.captured = statement.captured;
+            return block;
+        }
+
+        @Override
+        public Statement visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+            return new Statement.CompleteExpression(move(statement.expression));
+        }
+
+        @Override
+        public Statement visitFunctionStatement(Statement.Function statement) {
+            List<Token> params = new ArrayList<>(statement.params.size());
+            for (Token param : statement.params) {
+                params.add(move(param));
+            }
+            Statement.Function function = new Statement.Function(move(statement.name), params,
+                    moveStatements(statement.body));
+            function.slot = statement.slot;
+            function.slotCount = statement.slotCount;
+            function.captured = statement.captured;
+            return function;
+        }
+
+        @Override
+        public Statement visitIfStatement(Statement.If statement) {
+            return new Statement.If(move(statement.condition), move(statement.thenBranch),
+                    move(statement.elseBranch));
+        }
+
+        @Override
+        public Statement visitPrintStatement(Statement.Print statement) {
+            return new Statement.Print(move(statement.expression));
+        }
+
+        @Override
+        public Statement visitReturnStatement(Statement.Return statement) {
+            Statement.Return moved = new Statement.Return(move(statement.keyword), move(statement.value));
+            moved.tailCall = statement.tailCall;
+            return moved;
+        }
+
+        @Override
+        public Statement visitVarStatement(Statement.Var statement) {
+            Statement.Var var = new Statement.Var(move(statement.name), move(statement.initializer));
+            var.slot = statement.slot;
+            return var;
+        }
+
+        @Override
+        public Statement visitWhileStatement(Statement.While statement) {
+            return new Statement.While(move(statement.keyword), move(statement.condition), move(statement.body));
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package simpal.parser;
 
+import simpal.errors.ErrorReporter;
 import simpal.lang.Expression;
-import simpal.SimPal;
 import simpal.lang.Statement;
 import simpal.token.Token;
+import simpal.token.TokenSource;
 import simpal.token.TokenType;
 
 import java.util.ArrayList;
@@ -17,11 +18,57 @@ public class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private static final int PRECEDENCE_NONE = 0;
+    private static final int PRECEDENCE_ASSIGNMENT = 1;
+    private static final int PRECEDENCE_OR = 2;
+    private static final int PRECEDENCE_AND = 3;
+    private static final int PRECEDENCE_EQUALITY = 4;
+    private static final int PRECEDENCE_COMPARISON = 5;
+    private static final int PRECEDENCE_TERM = 6;
+    private static final int PRECEDENCE_FACTOR = 7;
+    private static final int PRECEDENCE_UNARY = 8;
+    private static final int PRECEDENCE_CALL = 9;
+
+    // Precedence of every token type when it follows an operand, PRECEDENCE_NONE if it does not continue an expression
+    private static final int[] INFIX_PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        Arrays.fill(INFIX_PRECEDENCE, PRECEDENCE_NONE);
+        INFIX_PRECEDENCE[OR.ordinal()] = PRECEDENCE_OR;
+        INFIX_PRECEDENCE[AND.ordinal()] = PRECEDENCE_AND;
+        INFIX_PRECEDENCE[BANG_EQUAL.ordinal()] = PRECEDENCE_EQUALITY;
+        INFIX_PRECEDENCE[EQUAL_EQUAL.ordinal()] = PRECEDENCE_EQUALITY;
+        INFIX_PRECEDENCE[GREATER.ordinal()] = PRECEDENCE_COMPARISON;
+        INFIX_PRECEDENCE[GREATER_EQUAL.ordinal()] = PRECEDENCE_COMPARISON;
+        INFIX_PRECEDENCE[LESS.ordinal()] = PRECEDENCE_COMPARISON;
+        INFIX_PRECEDENCE[LESS_EQUAL.ordinal()] = PRECEDENCE_COMPARISON;
+        INFIX_PRECEDENCE[PLUS.ordinal()] = PRECEDENCE_TERM;
+        INFIX_PRECEDENCE[MINUS.ordinal()] = PRECEDENCE_TERM;
+        INFIX_PRECEDENCE[SLASH.ordinal()] = PRECEDENCE_FACTOR;
+        INFIX_PRECEDENCE[STAR.ordinal()] = PRECEDENCE_FACTOR;
+        INFIX_PRECEDENCE[MODULO.ordinal()] = PRECEDENCE_FACTOR;
+        INFIX_PRECEDENCE[LEFT_PAREN.ordinal()] = PRECEDENCE_CALL;
+    }
+
+    private final TokenSource tokens;
+    private final ErrorReporter errors;
+    private Token currentToken;
+    private Token previousToken;
+
+    public Parser(List<Token> tokens, ErrorReporter errors) {
+        this(tokens.iterator()::next, errors);
+    }
 
-    public Parser(List<Token> tokens) {
+    /**
+     * Parser that pulls tokens from the source as it needs them, only the current and the previous token are kept
+     *
+     * @param tokens source of tokens, has to end with EOF
+     * @param errors reporter of parsing errors
+     */
+    public Parser(TokenSource tokens, ErrorReporter errors) {
         this.tokens = tokens;
+        this.errors = errors;
+        this.currentToken = tokens.nextToken();
     }
 
     /**
@@ -43,13 +90,14 @@ public class Parser {
      *
      * @return Statement can be function, variable declaration or just a statement
      */
-    private Statement declaration() {
+    Statement declaration() {
+        int line = peekCurrentToken().line;
         try {
-            if (matchAnyTokenType(FUN)) {
-                return function("function");
+            if (matchTokenType(FUN)) {
+                return startingAt(line, function("function"));
             }
-            if (matchAnyTokenType(VAR)) {
-                return varDeclaration();
+            if (matchTokenType(VAR)) {
+                return startingAt(line, varDeclaration());
             }
             return statement();
         } catch (ParseError parseError) {
@@ -78,7 +126,7 @@ public class Parser {
 
                 parameters.add(
                         consume(IDENTIFIER, "Expect parameter name."));
-            } while (matchAnyTokenType(COMMA));
+            } while (matchTokenType(COMMA));
         }
         consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
@@ -95,7 +143,7 @@ public class Parser {
     private Statement varDeclaration() {
         Token name = consume(IDENTIFIER, "Expect variable name.");
         Expression initializer = null;
-        if (matchAnyTokenType(EQUAL)) {
+        if (matchTokenType(EQUAL)) {
             initializer = expression();
         }
 
@@ -111,13 +159,41 @@ public class Parser {
      * @return Specific statement based on match
      */
     private Statement statement() {
-        if (matchAnyTokenType(FOR)) return forStatement();
-        if (matchAnyTokenType(IF)) return ifStatement();
-        if (matchAnyTokenType(PRINT)) return printStatement();
-        if (matchAnyTokenType(RETURN)) return returnStatement();
-        if (matchAnyTokenType(WHILE)) return whileStatement();
-        if (matchAnyTokenType(LEFT_BRACE)) return new Statement.Block(block());
-        return expressionStatement();
+        int line = peekCurrentToken().line;
+        switch (peekCurrentToken().tokenType) {
+            case FOR:
+                moveToNextToken();
+                return startingAt(line, forStatement());
+            case IF:
+                moveToNextToken();
+                return startingAt(line, ifStatement());
+            case PRINT:
+                moveToNextToken();
+                return startingAt(line, printStatement());
+            case RETURN:
+                moveToNextToken();
+                return startingAt(line, returnStatement());
+            case WHILE:
+                moveToNextToken();
+                return startingAt(line, whileStatement());
+            case LEFT_BRACE:
+                moveToNextToken();
+                return startingAt(line, new Statement.Block(block()));
+            default:
+                return startingAt(line, expressionStatement());
+        }
+    }
+
+    /**
+     * Records the line a statement starts on, so that a profile can tell which line is running
+     *
+     * @param line      line of the first token of the statement
+     * @param statement parsed statement
+     * @return the same statement
+     */
+    private static <T extends Statement> T startingAt(int line, T statement) {
+        statement.line = line;
+        return statement;
     }
 
     /*
@@ -131,15 +207,17 @@ public class Parser {
      * @return Statement representing "for-loop"
      */
     private Statement forStatement() {
+        Token keyword = getPreviousToken();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Statement initializer;
-        if (matchAnyTokenType(SEMICOLON)) {
+        int initializerLine = peekCurrentToken().line;
+        if (matchTokenType(SEMICOLON)) {
             initializer = null;
-        } else if (matchAnyTokenType(VAR)) {
-            initializer = varDeclaration();
+        } else if (matchTokenType(VAR)) {
+            initializer = startingAt(initializerLine, varDeclaration());
         } else {
-            initializer = expressionStatement();
+            initializer = startingAt(initializerLine, expressionStatement());
         }
 
         Expression condition = null;
@@ -149,6 +227,7 @@ public class Parser {
         consume(SEMICOLON, "Expect ';' after loop condition.");
 
         Expression increment = null;
+        int incrementLine = peekCurrentToken().line;
         if (!checkTokenType(RIGHT_PAREN)) {
             increment = expression();
         }
@@ -157,16 +236,16 @@ public class Parser {
         Statement body = statement();
 
         if (increment != null) {
-            body = new Statement.Block(Arrays.asList(
-                    body, new Statement.CompleteExpression(increment)
-            ));
+            body = startingAt(keyword.line, new Statement.Block(Arrays.asList(
+                    body, startingAt(incrementLine, new Statement.CompleteExpression(increment))
+            )));
         }
 
         if (condition == null) condition = new Expression.Literal(true);
-        body = new Statement.While(condition, body);
+        body = startingAt(keyword.line, new Statement.While(keyword, condition, body));
 
         if (initializer != null) {
-            body = new Statement.Block(Arrays.asList(initializer, body));
+            body = startingAt(keyword.line, new Statement.Block(Arrays.asList(initializer, body)));
         }
 
         return body;
@@ -181,7 +260,7 @@ public class Parser {
         Statement thenBranch = statement();
         Statement elseBranch = null;
 
-        if (matchAnyTokenType(ELSE)) {
+        if (matchTokenType(ELSE)) {
             elseBranch = statement();
         }
 
@@ -206,12 +285,13 @@ public class Parser {
     }
 
     private Statement whileStatement() {
+        Token keyword = getPreviousToken();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expression condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Statement body = statement();
 
-        return new Statement.While(condition, body);
+        return new Statement.While(keyword, condition, body);
     }
 
     private List<Statement> block() {
@@ -230,16 +310,47 @@ public class Parser {
         return new Statement.CompleteExpression(expression);
     }
 
+    /**
+     * Parses an expression, binary operators are handled by precedence climbing over {@link #INFIX_PRECEDENCE} instead
+     * of one method per grammar rule, the resulting tree is the same as the one the grammar describes
+     *
+     * @return parsed expression
+     */
     private Expression expression() {
-        return assignment();
+        return parsePrecedence(PRECEDENCE_ASSIGNMENT);
     }
 
-    private Expression assignment() {
-        Expression expression = orExpression();
+    /**
+     * Parses an expression whose operators all bind at least as tightly as the given precedence
+     *
+     * @param precedence lowest precedence that is parsed
+     * @return parsed expression
+     */
+    private Expression parsePrecedence(int precedence) {
+        Expression expression = prefix();
+
+        while (true) {
+            int infixPrecedence = INFIX_PRECEDENCE[peekCurrentToken().tokenType.ordinal()];
+            if (infixPrecedence < precedence) break;
 
-        if (matchAnyTokenType(EQUAL)) {
+            Token operator = moveToNextToken();
+            if (infixPrecedence == PRECEDENCE_CALL) {
+                expression = finishCall(expression);
+                continue;
+            }
+
+            // Operators are left associative, so the right operand only takes operators that bind more tightly
+            Expression rightExpression = parsePrecedence(infixPrecedence + 1);
+            if (infixPrecedence == PRECEDENCE_OR || infixPrecedence == PRECEDENCE_AND) {
+                expression = new Expression.Logical(expression, operator, rightExpression);
+            } else {
+                expression = new Expression.Binary(expression, operator, rightExpression);
+            }
+        }
+
+        if (precedence <= PRECEDENCE_ASSIGNMENT && matchTokenType(EQUAL)) {
             Token equals = getPreviousToken();
-            Expression value = assignment();
+            Expression value = parsePrecedence(PRECEDENCE_ASSIGNMENT);
 
             if (expression instanceof Expression.Variable) {
                 Token name = ((Expression.Variable) expression).name;
@@ -252,94 +363,45 @@ public class Parser {
         return expression;
     }
 
-    private Expression orExpression() {
-        Expression expression = andExpression();
-
-        while (matchAnyTokenType(OR)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = andExpression();
-            expression = new Expression.Logical(expression, operator, rightExpression);
-        }
-
-        return expression;
-    }
-
-    private Expression andExpression() {
-        Expression expression = equality();
-
-        while (matchAnyTokenType(AND)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = equality();
-            expression = new Expression.Logical(expression, operator, rightExpression);
-        }
-
-        return expression;
-    }
-
-    private Expression equality() {
-        Expression expression = comparison();
-
-        while (matchAnyTokenType(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = comparison();
-            expression = new Expression.Binary(expression, operator, rightExpression);
-        }
-
-        return expression;
-    }
-
-    private Expression comparison() {
-        Expression expression = term();
-
-        while (matchAnyTokenType(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = term();
-            expression = new Expression.Binary(expression, operator, rightExpression);
-        }
-
-        return expression;
-    }
-
-    private Expression term() {
-        Expression expression = factor();
-        while (matchAnyTokenType(PLUS, MINUS)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = factor();
-            expression = new Expression.Binary(expression, operator, rightExpression);
-        }
-        return expression;
-    }
-
-    private Expression factor() {
-        Expression expression = unary();
-        while (matchAnyTokenType(SLASH, STAR, MODULO)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = unary();
-            expression = new Expression.Binary(expression, operator, rightExpression);
-        }
-        return expression;
-    }
-
-    private Expression unary() {
-        if (matchAnyTokenType(BANG, MINUS)) {
-            Token operator = getPreviousToken();
-            Expression rightExpression = unary();
-            return new Expression.Unary(operator, rightExpression);
-        }
-        return call();
-    }
-
-    private Expression call() {
-        Expression expression = primary();
-
-        while (true) {
-            if (matchAnyTokenType(LEFT_PAREN)) {
-                expression = finishCall(expression);
-            } else {
-                break;
+    /**
+     * Parses what an expression can start with, a unary operator or a primary expression
+     *
+     * @return parsed expression
+     */
+    private Expression prefix() {
+        Token token = peekCurrentToken();
+        switch (token.tokenType) {
+            case BANG:
+            case MINUS: {
+                moveToNextToken();
+                Expression rightExpression = parsePrecedence(PRECEDENCE_UNARY);
+                return new Expression.Unary(token, rightExpression);
             }
+            case FALSE:
+                moveToNextToken();
+                return new Expression.Literal(false);
+            case TRUE:
+                moveToNextToken();
+                return new Expression.Literal(true);
+            case NIL:
+                moveToNextToken();
+                return new Expression.Literal(null);
+            case NUMBER:
+            case STRING:
+                moveToNextToken();
+                return new Expression.Literal(token.literal);
+            case IDENTIFIER:
+                moveToNextToken();
+                return new Expression.Variable(token);
+            case LEFT_PAREN: {
+                moveToNextToken();
+                Expression expression = expression();
+                consume(RIGHT_PAREN, "Expect ')' after expression.");
+                return new Expression.Grouping(expression);
+            }
+            default:
+                throw error(token, "Expect expression.");
         }
-        return expression;
     }
 
     private Expression finishCall(Expression callee) {
@@ -350,7 +412,7 @@ public class Parser {
                     error(peekCurrentToken(), "Can't have more than 255 arguments.");
                 }
                 arguments.add(expression());
-            } while (matchAnyTokenType(COMMA));
+            } while (matchTokenType(COMMA));
         }
 
         Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
@@ -358,41 +420,10 @@ public class Parser {
         return new Expression.Call(callee, paren, arguments);
     }
 
-    private Expression primary() {
-        if (matchAnyTokenType(FALSE)) {
-            return new Expression.Literal(false);
-        }
-        if (matchAnyTokenType(TRUE)) {
-            return new Expression.Literal(true);
-        }
-        if (matchAnyTokenType(NIL)) {
-            return new Expression.Literal(null);
-        }
-
-        if (matchAnyTokenType(NUMBER, STRING)) {
-            return new Expression.Literal(getPreviousToken().literal);
-        }
-
-        if (matchAnyTokenType(IDENTIFIER)) {
-            return new Expression.Variable(getPreviousToken());
-        }
-
-        if (matchAnyTokenType(LEFT_PAREN)) {
-            Expression expression = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expression.Grouping(expression);
-        }
-
-        throw error(peekCurrentToken(), "Expect expression.");
-    }
-
-
-    private boolean matchAnyTokenType(TokenType... tokenTypes) {
-        for (TokenType tokenType : tokenTypes) {
-            if (checkTokenType(tokenType)) {
-                moveToNextToken();
-                return true;
-            }
+    private boolean matchTokenType(TokenType tokenType) {
+        if (checkTokenType(tokenType)) {
+            moveToNextToken();
+            return true;
         }
         return false;
     }
@@ -409,16 +440,19 @@ public class Parser {
 
 
     private Token moveToNextToken() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previousToken = currentToken;
+            currentToken = tokens.nextToken();
+        }
         return getPreviousToken();
     }
 
-    private Token getPreviousToken() {
-        return tokens.get(current - 1);
+    Token getPreviousToken() {
+        return previousToken;
     }
 
     private ParseError error(Token token, String message) {
-        SimPal.error(token, message);
+        errors.error(token, message);
         return new ParseError();
     }
 
@@ -449,8 +483,8 @@ public class Parser {
      *
      * @return Token current token
      */
-    private Token peekCurrentToken() {
-        return tokens.get(current);
+    Token peekCurrentToken() {
+        return currentToken;
     }
 
     /**
@@ -458,7 +492,7 @@ public class Parser {
      *
      * @return boolean if EOF is reached
      */
-    private boolean isAtEnd() {
+    boolean isAtEnd() {
         return peekCurrentToken().tokenType == EOF;
     }
 }
\ No newline at end of file
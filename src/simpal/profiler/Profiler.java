@@ -0,0 +1,282 @@
+package simpal.profiler;
+
+import simpal.lang.Statement;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sampling profiler of the programs run by one {@link ProfilingInterpreter}. The interpreter only publishes the
+ * line it is at and the functions it is in, counting calls as it enters them and statements as it executes them, a
+ * thread of the profiler looks at them at a fixed interval. Time per function and per line is estimated from where the samples found the program,
+ * every sample standing for the time since the one before it.
+ */
+public class Profiler {
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMillis(1);
+    private static final String SCRIPT = "<script>";
+    private static final int TOP_LINES = 20;
+    // Slots of the cache of profiles by declaration, a power of two
+    private static final int CACHED_FUNCTIONS = 64;
+
+    private static final VarHandle LINE;
+    private static final VarHandle STACK;
+    private static final VarHandle DEPTH;
+    private static final VarHandle RUNNING;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LINE = lookup.findVarHandle(Profiler.class, "line", int.class);
+            STACK = lookup.findVarHandle(Profiler.class, "stack", FunctionProfile[].class);
+            DEPTH = lookup.findVarHandle(Profiler.class, "depth", int.class);
+            RUNNING = lookup.findVarHandle(Profiler.class, "running", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Calls and sampled time of one function declaration, every closure created from it counts towards it
+     */
+    private static final class FunctionProfile {
+        // Frame name in the collapsed stacks, without spaces or semicolons
+        final String name;
+        // Counted by the interpreter thread
+        long calls;
+        // Added up by the sampler
+        long inclusiveNanos;
+        long exclusiveNanos;
+        // Sample that last counted the function as running, so recursion is counted once per sample
+        long lastSample = -1;
+
+        FunctionProfile(String name) {
+            this.name = name;
+        }
+    }
+
+    // Published by the interpreter thread with opaque writes, read by the sampler, which may see them a little late
+    // 0 before the first statement of a run
+    private int line;
+    private FunctionProfile[] stack = new FunctionProfile[64];
+    // Functions on the stack, the script below them is not counted
+    private int depth = 0;
+    private boolean running = false;
+
+    // Only used by the interpreter thread
+    private final Map<Statement.Function, FunctionProfile> functions = new IdentityHashMap<>();
+    private final FunctionProfile script = new FunctionProfile(SCRIPT);
+    // Function entered last, recursion and calls in a loop find their profile here without hashing
+    private Statement.Function lastDeclaration;
+    private FunctionProfile lastFunction;
+    // Profiles of recently called functions by the identity hash of their declaration, so most calls skip the map
+    private final Statement.Function[] cachedDeclarations = new Statement.Function[CACHED_FUNCTIONS];
+    private final FunctionProfile[] cachedProfiles = new FunctionProfile[CACHED_FUNCTIONS];
+    // Statements executed by line
+    private long[] lineHits = new long[64];
+
+    // Only used by the sampler until it is stopped
+    private final long intervalNanos;
+    private final Map<String, Long> stackSamples = new HashMap<>();
+    private final Map<Integer, Long> lineSamples = new HashMap<>();
+    private long samples = 0;
+    private long sampledNanos = 0;
+
+    private Thread sampler;
+    private volatile boolean stopped = false;
+
+    public Profiler() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval time between two samples
+     */
+    public Profiler(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        if (intervalNanos <= 0) throw new IllegalArgumentException("The sampling interval has to be positive.");
+    }
+
+    /**
+     * Starts taking samples, time when no program is running is not counted
+     */
+    public void start() {
+        if (sampler != null) throw new IllegalStateException("The profiler was already started.");
+        sampler = new Thread(this::sampleUntilStopped, "simpal-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops taking samples and waits for the sampler to finish, the results can be read afterwards
+     */
+    public void stop() {
+        if (sampler == null) return;
+        stopped = true;
+        LockSupport.unpark(sampler);
+        boolean interrupted = false;
+        for (; ; ) {
+            try {
+                sampler.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    void startRun() {
+        script.calls++;
+        LINE.setOpaque(this, 0);
+        DEPTH.setOpaque(this, 0);
+        RUNNING.setOpaque(this, true);
+    }
+
+    void endRun() {
+        RUNNING.setOpaque(this, false);
+    }
+
+    /**
+     * @param line line of the statement the interpreter is about to execute
+     */
+    void at(int line) {
+        if (line >= lineHits.length) lineHits = Arrays.copyOf(lineHits, Math.max(line + 1, lineHits.length * 2));
+        lineHits[line]++;
+        LINE.setOpaque(this, line);
+    }
+
+    /**
+     * Counts a call of the function and puts it on the stack
+     *
+     * @param declaration declaration of the called function
+     */
+    void enter(Statement.Function declaration) {
+        FunctionProfile function = declaration == lastDeclaration ? lastFunction : profile(declaration);
+        function.calls++;
+
+        if (depth == stack.length) STACK.setOpaque(this, Arrays.copyOf(stack, depth * 2));
+        stack[depth] = function;
+        DEPTH.setOpaque(this, depth + 1);
+    }
+
+    private FunctionProfile profile(Statement.Function declaration) {
+        int slot = System.identityHashCode(declaration) & (CACHED_FUNCTIONS - 1);
+        FunctionProfile function = cachedProfiles[slot];
+        if (cachedDeclarations[slot] != declaration) {
+            function = functions.get(declaration);
+            if (function == null) {
+                function = new FunctionProfile(declaration.name.lexeme() + ":" + declaration.name.line);
+                functions.put(declaration, function);
+            }
+            cachedDeclarations[slot] = declaration;
+            cachedProfiles[slot] = function;
+        }
+        lastDeclaration = declaration;
+        lastFunction = function;
+        return function;
+    }
+
+    /**
+     * Takes the function that is done off the stack, only the depth is published, the line stays the last one of the
+     * function until the caller executes its next statement
+     */
+    void exit() {
+        DEPTH.setOpaque(this, depth - 1);
+    }
+
+    private void sampleUntilStopped() {
+        long last = System.nanoTime();
+        while (!stopped) {
+            LockSupport.parkNanos(intervalNanos);
+            long now = System.nanoTime();
+            sample(now - last);
+            last = now;
+        }
+    }
+
+    private void sample(long nanos) {
+        if (!(boolean) RUNNING.getOpaque(this)) return;
+        int at = (int) LINE.getOpaque(this);
+        FunctionProfile[] frames = (FunctionProfile[]) STACK.getOpaque(this);
+        int count = Math.min((int) DEPTH.getOpaque(this), frames.length);
+
+        samples++;
+        sampledNanos += nanos;
+        StringBuilder collapsed = new StringBuilder(SCRIPT);
+        FunctionProfile top = script;
+        script.inclusiveNanos += nanos;
+        for (int i = 0; i < count; i++) {
+            // A slot can still be empty when the sample catches a call being entered
+            FunctionProfile function = frames[i];
+            if (function == null) break;
+            collapsed.append(';').append(function.name);
+            if (function.lastSample != samples) {
+                function.lastSample = samples;
+                function.inclusiveNanos += nanos;
+            }
+            top = function;
+        }
+        top.exclusiveNanos += nanos;
+        stackSamples.merge(collapsed.toString(), 1L, Long::sum);
+        if (at != 0) lineSamples.merge(at, 1L, Long::sum);
+    }
+
+    /**
+     * Writes how often every stack was sampled, one stack per line with its frames separated by semicolons and then
+     * its count, the format flame graph tools read
+     *
+     * @param path file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCollapsedStacks(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> entry : new TreeMap<>(stackSamples).entrySet()) {
+                writer.println(entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Prints calls and time of every function, the most exclusive time first, and the lines that executed the most
+     * statements with the number of samples that found the program on them
+     *
+     * @param out stream the summary is printed on
+     */
+    public void printSummary(PrintStream out) {
+        out.printf("Profile of %d samples over %.1f ms%n", samples, sampledNanos / 1e6);
+
+        List<FunctionProfile> profiles = new ArrayList<>(functions.values());
+        profiles.add(script);
+        profiles.sort((a, b) -> Long.compare(b.exclusiveNanos, a.exclusiveNanos));
+        out.printf("%-24s %12s %14s %14s%n", "function", "calls", "inclusive ms", "exclusive ms");
+        for (FunctionProfile profile : profiles) {
+            out.printf("%-24s %12d %14.1f %14.1f%n", profile.name, profile.calls,
+                    profile.inclusiveNanos / 1e6, profile.exclusiveNanos / 1e6);
+        }
+
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 1; line < lineHits.length; line++) {
+            if (lineHits[line] != 0) lines.add(line);
+        }
+        lines.sort((a, b) -> Long.compare(lineHits[b], lineHits[a]));
+        out.printf("%-24s %12s %14s%n", "line", "hits", "samples");
+        for (int line : lines.subList(0, Math.min(TOP_LINES, lines.size()))) {
+            out.printf("%-24d %12d %14d%n", line, lineHits[line], lineSamples.getOrDefault(line, 0L));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package simpal.profiler;
+
+import simpal.errors.ErrorReporter;
+import simpal.functions.SimPalFunction;
+import simpal.interpreter.Completion;
+import simpal.interpreter.Environment;
+import simpal.interpreter.ExecutionLimits;
+import simpal.interpreter.Interpreter;
+import simpal.lang.Statement;
+import simpal.output.OutputSink;
+
+import java.util.List;
+
+/**
+ * Interpreter that tells its {@link Profiler} which statement and which calls it is running. Only created when a
+ * program is profiled, so the plain {@link Interpreter} never pays for the hooks.
+ */
+public class ProfilingInterpreter extends Interpreter {
+    private final Profiler profiler;
+
+    /**
+     * @param outputSink destination of print statements
+     * @param errors     reporter of the runtime error that stops a program
+     * @param limits     limits every run of a program is given
+     * @param profiler   profiler recording the runs, not shared with another interpreter
+     */
+    public ProfilingInterpreter(OutputSink outputSink, ErrorReporter errors, ExecutionLimits limits,
+                                Profiler profiler) {
+        super(outputSink, errors, limits);
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void interpret(List<Statement> statements) {
+        profiler.startRun();
+        try {
+            super.interpret(statements);
+        } finally {
+            profiler.endRun();
+        }
+    }
+
+    @Override
+    protected Completion execute(Statement statement) {
+        profiler.at(statement.line);
+        return super.execute(statement);
+    }
+
+    @Override
+    protected Completion executeBody(SimPalFunction function, Environment frame) {
+        profiler.enter(function.declaration());
+        try {
+            return super.executeBody(function, frame);
+        } finally {
+            profiler.exit();
+        }
+    }
+}
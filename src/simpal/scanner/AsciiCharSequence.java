@@ -0,0 +1,70 @@
+package simpal.scanner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Characters of an ASCII source read straight from its bytes, so a mapped file can be scanned without decoding it
+ * into a string first
+ */
+public final class AsciiCharSequence implements CharSequence {
+    private static final long NON_ASCII_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param bytes source bytes, every one of them has to be ASCII, see {@link #isAscii(ByteBuffer)}
+     */
+    public AsciiCharSequence(ByteBuffer bytes) {
+        this(bytes, 0, bytes.limit());
+    }
+
+    private AsciiCharSequence(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Checks if every byte is ASCII, in which case each byte is one character in any ASCII compatible charset
+     *
+     * @param bytes bytes to be checked, from 0 up to their limit
+     * @return true if no byte has its high bit set
+     */
+    public static boolean isAscii(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        int i = 0;
+        // Eight bytes at a time
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((bytes.getLong(i) & NON_ASCII_BITS) != 0) return false;
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) bytes.get(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new AsciiCharSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[length];
+        bytes.get(offset, text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -1,13 +1,17 @@
 package simpal.scanner;
 
-import simpal.SimPal;
+import simpal.errors.ErrorReporter;
+import simpal.errors.IOError;
 import simpal.token.Token;
+import simpal.token.TokenSource;
 import simpal.token.TokenType;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import static simpal.token.TokenType.*;
 
@@ -17,39 +21,63 @@ ToDo:
 2. Refactor the code
  */
 
-public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+public class Scanner implements TokenSource {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Whole source code, null when the source is read from a reader
+    private final CharSequence source;
+    // When scanning from a reader only the characters from the start of the current token onwards are kept
+    private final Reader reader;
+    private char[] buffer;
+    private CharBuffer window;
+    // Offset in the source of the first character of the buffer and just after its last character
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // Token produced by the last scanToken call, null if it only skipped whitespace or a comment
+    private Token scanned;
+    private Token eof;
 
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-        keywords.put("int", INT);
-        keywords.put("double", DOUBLE);
+    // Every identifier of the source shares one string per name
+    private final SymbolTable symbols = new SymbolTable();
+    private final ErrorReporter errors;
+
+    public Scanner(CharSequence source, ErrorReporter errors) {
+        this(source, 0, 1, errors);
     }
 
-    public Scanner(String source) {
+    /**
+     * Scanner that starts in the middle of the source, the offset has to be outside any token, string or comment
+     *
+     * @param source source code
+     * @param offset offset scanning starts at
+     * @param line   line the offset is on
+     * @param errors reporter of scanning errors
+     */
+    public Scanner(CharSequence source, int offset, int line, ErrorReporter errors) {
         this.source = source;
+        this.reader = null;
+        this.current = offset;
+        this.line = line;
+        this.errors = errors;
+    }
+
+    /**
+     * Scanner that reads the source while it scans, only as much of the source as the current token needs is held in
+     * memory, tokens do not refer to the source
+     *
+     * @param reader source code, not closed by the scanner
+     * @param errors reporter of scanning errors
+     */
+    public Scanner(Reader reader, ErrorReporter errors) {
+        this.source = null;
+        this.reader = reader;
+        this.buffer = new char[BUFFER_SIZE];
+        this.window = CharBuffer.wrap(buffer);
+        this.errors = errors;
     }
 
     /**
@@ -58,12 +86,29 @@ public class Scanner {
      * @return list of tokens
      */
     public List<Token> scanTokens() {
-        while (!isAtEnd()) {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.tokenType != EOF);
+        return tokens;
+    }
+
+    @Override
+    public Token nextToken() {
+        if (eof != null) return eof;
+        while (scanned == null) {
             start = current;
+            if (isAtEnd()) {
+                eof = new Token(EOF, "", current, null, line);
+                return eof;
+            }
             scanToken();
         }
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        Token token = scanned;
+        scanned = null;
+        return token;
     }
 
     /**
@@ -72,7 +117,72 @@ public class Scanner {
      * @return true if end of source code is reached else false
      */
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !isAvailable(current);
+    }
+
+    /**
+     * Checks if the source has a character at the offset, reading more of it if needed
+     *
+     * @param offset offset in the source
+     * @return false if the source ends before the offset
+     */
+    private boolean isAvailable(int offset) {
+        if (reader == null) return offset < source.length();
+        while (offset >= bufferEnd) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads more of the source into the buffer, characters before the start of the current token are dropped first
+     *
+     * @return false if the end of the source is reached
+     */
+    private boolean fill() {
+        int kept = bufferEnd - start;
+        if (start > bufferStart) {
+            System.arraycopy(buffer, start - bufferStart, buffer, 0, kept);
+            bufferStart = start;
+        } else if (kept == buffer.length) {
+            // A single token longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            window = CharBuffer.wrap(buffer);
+        }
+
+        try {
+            int read;
+            do {
+                read = reader.read(buffer, kept, buffer.length - kept);
+            } while (read == 0);
+            if (read < 0) return false;
+            bufferEnd += read;
+            return true;
+        } catch (IOException e) {
+            throw new IOError("Error while reading source code.", e);
+        }
+    }
+
+    private char charAt(int offset) {
+        if (reader == null) return source.charAt(offset);
+        return buffer[offset - bufferStart];
+    }
+
+    /**
+     * Copies a range of the source out into a string
+     *
+     * @param from offset of the first character
+     * @param to   offset just after the last character
+     * @return text of the range
+     */
+    private String text(int from, int to) {
+        if (reader == null) return source.subSequence(from, to).toString();
+        return new String(buffer, from - bufferStart, to - from);
+    }
+
+    private String intern(int from, int to) {
+        if (reader == null) return symbols.intern(source, from, to);
+        return symbols.intern(window, from - bufferStart, to - bufferStart);
     }
 
     /**
@@ -153,7 +263,7 @@ public class Scanner {
                 } else if (isAlpha(nextCharacter)) {
                     identifier();
                 } else {
-                    SimPal.error(line, "Unexpected character.");
+                    errors.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -165,18 +275,19 @@ public class Scanner {
      * @return character from the source code which the current pointer points
      */
     private char moveToNextCharacter() {
-        return source.charAt(current++);
+        return charAt(current++);
     }
 
     /**
-     * Adds new token to the token list ( token is considered a string between start and current pointers )
+     * Adds new token to the token list ( token is considered a string between start and current pointers ), operators
+     * and keywords take the text of their type, only literals copy theirs out of the source
      *
      * @param tokenType Provides info about token type
      * @param literal   The literal value of the token
      */
     private void addToken(TokenType tokenType, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(tokenType, text, literal, line));
+        String text = tokenType.lexeme != null ? tokenType.lexeme : text(start, current);
+        scanned = new Token(tokenType, text, start, literal, line);
     }
 
     /**
@@ -196,7 +307,7 @@ public class Scanner {
      */
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (charAt(current) != expected) return false;
 
         current++;
         return true;
@@ -209,7 +320,7 @@ public class Scanner {
      */
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return charAt(current);
     }
 
     /**
@@ -218,8 +329,8 @@ public class Scanner {
      * @return Next character from the source code
      */
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!isAvailable(current + 1)) return '\0';
+        return charAt(current + 1);
     }
 
     // ToDo: var a = """a""" works in cpp and not in this language, later figure out why, and fix it if it's a mistake
@@ -234,13 +345,13 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            SimPal.error(line, "Unterminated string.");
+            errors.error(line, "Unterminated string.");
             return;
         }
 
         moveToNextCharacter();
 
-        String value = source.substring(start + 1, current - 1);
+        String value = text(start + 1, current - 1);
         addToken(STRING, value);
     }
 
@@ -257,8 +368,27 @@ public class Scanner {
             while (isDigit(peek())) moveToNextCharacter();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER, numberValue());
+    }
 
+    /**
+     * Value of the number between start and current pointers, whole numbers that a double holds exactly are computed
+     * from the digits, only fractions go through {@link Double#parseDouble(String)}
+     *
+     * @return value of the number literal
+     */
+    private double numberValue() {
+        // 15 digits always fit in the 53 bit mantissa of a double
+        if (current - start <= 15) {
+            long value = 0;
+            for (int i = start; i < current; i++) {
+                char ch = charAt(i);
+                if (ch == '.') return Double.parseDouble(text(start, current));
+                value = value * 10 + (ch - '0');
+            }
+            return value;
+        }
+        return Double.parseDouble(text(start, current));
     }
 
     /**
@@ -277,11 +407,94 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) moveToNextCharacter();
 
-        String text = source.substring(start, current);
-        TokenType tokenType = keywords.get(text);
-        if (tokenType == null) tokenType = IDENTIFIER;
+        TokenType tokenType = keyword();
+        if (tokenType == IDENTIFIER) {
+            scanned = new Token(IDENTIFIER, intern(start, current), start, null, line);
+        } else {
+            addToken(tokenType);
+        }
+    }
+
+    /**
+     * Recognizes keywords by their characters between start and current pointers without creating a string
+     *
+     * @return type of the keyword or IDENTIFIER if the word is not a keyword
+     */
+    private TokenType keyword() {
+        switch (charAt(start)) {
+            case 'a':
+                return checkKeyword(1, "nd", AND);
+            case 'c':
+                return checkKeyword(1, "lass", CLASS);
+            case 'd':
+                return checkKeyword(1, "ouble", DOUBLE);
+            case 'e':
+                return checkKeyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'a':
+                            return checkKeyword(2, "lse", FALSE);
+                        case 'o':
+                            return checkKeyword(2, "r", FOR);
+                        case 'u':
+                            return checkKeyword(2, "n", FUN);
+                    }
+                }
+                return IDENTIFIER;
+            case 'i':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'f':
+                            return checkKeyword(2, "", IF);
+                        case 'n':
+                            return checkKeyword(2, "t", INT);
+                    }
+                }
+                return IDENTIFIER;
+            case 'n':
+                return checkKeyword(1, "il", NIL);
+            case 'o':
+                return checkKeyword(1, "r", OR);
+            case 'p':
+                return checkKeyword(1, "rint", PRINT);
+            case 'r':
+                return checkKeyword(1, "eturn", RETURN);
+            case 's':
+                return checkKeyword(1, "uper", SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'h':
+                            return checkKeyword(2, "is", THIS);
+                        case 'r':
+                            return checkKeyword(2, "ue", TRUE);
+                    }
+                }
+                return IDENTIFIER;
+            case 'v':
+                return checkKeyword(1, "ar", VAR);
+            case 'w':
+                return checkKeyword(1, "hile", WHILE);
+            default:
+                return IDENTIFIER;
+        }
+    }
 
-        addToken(tokenType);
+    /**
+     * Checks if the rest of the word matches the rest of a keyword
+     *
+     * @param offset    number of characters of the word already matched
+     * @param rest      remaining characters of the keyword
+     * @param tokenType type of the keyword
+     * @return tokenType if the word is the keyword else IDENTIFIER
+     */
+    private TokenType checkKeyword(int offset, String rest, TokenType tokenType) {
+        if (current - start != offset + rest.length()) return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (charAt(start + offset + i) != rest.charAt(i)) return IDENTIFIER;
+        }
+        return tokenType;
     }
 
     /**
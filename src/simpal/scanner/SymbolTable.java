@@ -0,0 +1,64 @@
+package simpal.scanner;
+
+/**
+ * Interns identifiers straight from a range of the source, a name that was seen before is found without copying it
+ * out of the source first, so every occurrence of a name shares one string
+ */
+final class SymbolTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] symbols = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    /**
+     * Finds the interned string equal to the range of the source, adding it if the name is new
+     *
+     * @param source source code being scanned
+     * @param start  offset of the name
+     * @param end    offset just after the name
+     * @return interned name
+     */
+    String intern(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = symbols.length - 1;
+        int index = hash & mask;
+        while (symbols[index] != null) {
+            if (hashes[index] == hash && matches(symbols[index], source, start, end)) return symbols[index];
+            index = (index + 1) & mask;
+        }
+
+        String symbol = source.subSequence(start, end).toString();
+        symbols[index] = symbol;
+        hashes[index] = hash;
+        if (++count * 2 > symbols.length) grow();
+        return symbol;
+    }
+
+    private static boolean matches(String symbol, CharSequence source, int start, int end) {
+        if (symbol.length() != end - start) return false;
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        String[] oldSymbols = symbols;
+        int[] oldHashes = hashes;
+        symbols = new String[oldSymbols.length * 2];
+        hashes = new int[oldHashes.length * 2];
+        int mask = symbols.length - 1;
+        for (int i = 0; i < oldSymbols.length; i++) {
+            if (oldSymbols[i] == null) continue;
+            int index = oldHashes[i] & mask;
+            while (symbols[index] != null) index = (index + 1) & mask;
+            symbols[index] = oldSymbols[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+}
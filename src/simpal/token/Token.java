@@ -2,18 +2,59 @@ package simpal.token;
 
 public class Token {
     public final TokenType tokenType;
-    public final String lexeme;
     public final Object literal;
     public final int line;
 
+    // Tokens keep their own text, never the source, so a parsed program does not keep its source reachable
+    private final String lexeme;
+    private final int start;
+
     public Token(TokenType tokenType, String lexeme, Object literal, int line) {
+        this(tokenType, lexeme, 0, literal, line);
+    }
+
+    /**
+     * Token found at the given offset of the source, operators and keywords share the text of their
+     * {@link TokenType} and identifiers one interned string per name
+     *
+     * @param offset offset of the first character of the token
+     */
+    public Token(TokenType tokenType, String lexeme, int offset, Object literal, int line) {
         this.tokenType = tokenType;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.start = offset;
+    }
+
+    /**
+     * Offset of the token in the source it was scanned from, 0 for tokens that were not scanned from a source
+     *
+     * @return offset of the first character of the token
+     */
+    public int offset() {
+        return start;
+    }
+
+    /**
+     * Offset just after the last character of the token in the source it was scanned from
+     *
+     * @return offset after the token
+     */
+    public int endOffset() {
+        return start + lexeme.length();
+    }
+
+    /**
+     * Text of the token as it appears in the source, identifiers share one interned string per name
+     *
+     * @return text of the token
+     */
+    public String lexeme() {
+        return lexeme;
     }
 
     public String toString() {
-        return tokenType + " " + lexeme + " " + literal;
+        return tokenType + " " + lexeme() + " " + literal;
     }
 }
@@ -0,0 +1,13 @@
+package simpal.token;
+
+/**
+ * Supplies tokens one at a time, so the parser can start before the whole source has been scanned
+ */
+public interface TokenSource {
+    /**
+     * Scans the next token
+     *
+     * @return next token of the source, EOF once the source is exhausted and on every call after that
+     */
+    Token nextToken();
+}
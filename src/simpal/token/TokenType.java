@@ -2,53 +2,60 @@ package simpal.token;
 
 public enum TokenType {
     // Single-character tokens.
-    LEFT_PAREN,
-    RIGHT_PAREN,
-    LEFT_BRACE,
-    RIGHT_BRACE,
-    COMMA,
-    DOT,
-    MINUS,
-    PLUS,
-    SEMICOLON,
-    SLASH,
-    STAR,
-    MODULO,
+    LEFT_PAREN("("),
+    RIGHT_PAREN(")"),
+    LEFT_BRACE("{"),
+    RIGHT_BRACE("}"),
+    COMMA(","),
+    DOT("."),
+    MINUS("-"),
+    PLUS("+"),
+    SEMICOLON(";"),
+    SLASH("/"),
+    STAR("*"),
+    MODULO("%"),
 
     // One or two character tokens.
-    BANG,
-    BANG_EQUAL,
-    EQUAL,
-    EQUAL_EQUAL,
-    GREATER,
-    GREATER_EQUAL,
-    LESS,
-    LESS_EQUAL,
+    BANG("!"),
+    BANG_EQUAL("!="),
+    EQUAL("="),
+    EQUAL_EQUAL("=="),
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    LESS("<"),
+    LESS_EQUAL("<="),
 
     // Literals.
-    IDENTIFIER,
-    STRING,
-    NUMBER,
+    IDENTIFIER(null),
+    STRING(null),
+    NUMBER(null),
 
     // Keywords.
-    AND,
-    CLASS,
-    ELSE,
-    FALSE,
-    FUN,
-    FOR,
-    IF,
-    NIL,
-    OR,
-    PRINT,
-    RETURN,
-    SUPER,
-    THIS,
-    TRUE,
-    VAR,
-    WHILE,
-    INT,
-    DOUBLE,
+    AND("and"),
+    CLASS("class"),
+    ELSE("else"),
+    FALSE("false"),
+    FUN("fun"),
+    FOR("for"),
+    IF("if"),
+    NIL("nil"),
+    OR("or"),
+    PRINT("print"),
+    RETURN("return"),
+    SUPER("super"),
+    THIS("this"),
+    TRUE("true"),
+    VAR("var"),
+    WHILE("while"),
+    INT("int"),
+    DOUBLE("double"),
 
-    EOF
+    EOF("");
+
+    // Text every token of the type has, null for the types whose tokens each have their own
+    public final String lexeme;
+
+    TokenType(String lexeme) {
+        this.lexeme = lexeme;
+    }
 }
@@ -0,0 +1,200 @@
+package simpal.vm;
+
+import simpal.interpreter.Resolver;
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the local variables that a function declared inside their scope refers to, only those have to outlive the
+ * call that declared them and are kept in an {@link Upvalue} instead of on the stack
+ */
+final class Captures implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+    // Scopes the resolver counts depths over, innermost last, and the function each one belongs to
+    private final List<Statement> scopes = new ArrayList<>();
+    private final List<Statement.Function> owners = new ArrayList<>();
+    private final Map<Statement, boolean[]> captured = new IdentityHashMap<>();
+    private Statement.Function function = null;
+
+    private Captures() {
+    }
+
+    /**
+     * @param statements resolved statements of the program
+     * @return captured variables of every scope in the program
+     */
+    static Captures of(List<Statement> statements) {
+        Captures captures = new Captures();
+        captures.visit(statements);
+        return captures;
+    }
+
+    /**
+     * @param scope function or block with a scope of its own
+     * @param slot  slot the resolver gave the variable in that scope
+     * @return whether a function declared inside the scope refers to the variable
+     */
+    boolean isCaptured(Statement scope, int slot) {
+        boolean[] slots = captured.get(scope);
+        return slots != null && slots[slot];
+    }
+
+    @Override
+    public Void visitAssignExpression(Expression.Assign expression) {
+        visit(expression.value);
+        reference(expression.depth, expression.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        visit(expression.leftExpression);
+        visit(expression.rightExpression);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(Expression.Call expression) {
+        visit(expression.callee);
+        for (Expression argument : expression.arguments) {
+            visit(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        visit(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(Expression.Logical expression) {
+        visit(expression.leftExpression);
+        visit(expression.rightExpression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        visit(expression.rightExpression);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Expression.Variable expression) {
+        reference(expression.depth, expression.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Statement.Block statement) {
+        // Blocks without declarations have no scope of their own, see Resolver
+        if (statement.slotCount == 0) {
+            visit(statement.statements);
+            return null;
+        }
+
+        beginScope(statement);
+        visit(statement.statements);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+        visit(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(Statement.Function statement) {
+        Statement.Function enclosing = function;
+        function = statement;
+        beginScope(statement);
+        visit(statement.body);
+        endScope();
+        function = enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Statement.If statement) {
+        visit(statement.condition);
+        visit(statement.thenBranch);
+        if (statement.elseBranch != null) visit(statement.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Statement.Print statement) {
+        visit(statement.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Statement.Return statement) {
+        if (statement.value != null) visit(statement.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Statement.Var statement) {
+        if (statement.initializer != null) visit(statement.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Statement.While statement) {
+        visit(statement.condition);
+        visit(statement.body);
+        return null;
+    }
+
+    private void reference(int depth, int slot) {
+        if (depth == Resolver.GLOBAL) return;
+        int index = scopes.size() - 1 - depth;
+        if (owners.get(index) == function) return;
+
+        Statement scope = scopes.get(index);
+        captured.computeIfAbsent(scope, key -> new boolean[slotCount(key)])[slot] = true;
+    }
+
+    private static int slotCount(Statement scope) {
+        return scope instanceof Statement.Function ? ((Statement.Function) scope).slotCount
+                : ((Statement.Block) scope).slotCount;
+    }
+
+    private void beginScope(Statement scope) {
+        scopes.add(scope);
+        owners.add(function);
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+        owners.remove(owners.size() - 1);
+    }
+
+    private void visit(List<Statement> statements) {
+        for (Statement statement : statements) {
+            statement.accept(this);
+        }
+    }
+
+    private void visit(Statement statement) {
+        statement.accept(this);
+    }
+
+    private void visit(Expression expression) {
+        expression.accept(this);
+    }
+}
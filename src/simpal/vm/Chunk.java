@@ -0,0 +1,80 @@
+package simpal.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled code of a single function: the bytecode, its constant pool and a run-length encoded line table
+ */
+final class Chunk {
+    byte[] code = new byte[64];
+    int count = 0;
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    // Line table, lineNumbers[i] is the source line for the bytes starting at lineStarts[i]
+    private int[] lineStarts = new int[8];
+    private int[] lineNumbers = new int[8];
+    private int lineCount = 0;
+
+    void write(byte value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count++] = value;
+
+        if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineStarts[lineCount] = count - 1;
+            lineNumbers[lineCount] = line;
+            lineCount++;
+        }
+    }
+
+    /**
+     * Adds value to the constant pool, numbers and strings are stored only once per chunk
+     *
+     * @param value constant to be added
+     * @return index of the constant in the pool
+     */
+    int addConstant(Object value) {
+        boolean shared = value instanceof Double || value instanceof String;
+        if (shared) {
+            Integer index = constantIndexes.get(value);
+            if (index != null) return index;
+        }
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        if (shared) constantIndexes.put(value, constantCount);
+        return constantCount++;
+    }
+
+    /**
+     * Finds the source line of the instruction at offset
+     *
+     * @param offset offset of any byte of the instruction
+     * @return line number of the source code
+     */
+    int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return lineNumbers[low];
+    }
+}
@@ -0,0 +1,540 @@
+package simpal.vm;
+
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.Resolver;
+import simpal.lang.Expression;
+import simpal.lang.Statement;
+import simpal.token.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles resolved statements into bytecode for the {@link VM}, one compiler per function body
+ */
+final class Compiler implements Expression.Visitor<Void>, Statement.Visitor<Void> {
+    private static final int MAX_OPERAND = 0xFFFF;
+    // Index operand of the globals whose index does not fit in one
+    static final int SHARED_GLOBAL_INDEX = MAX_OPERAND;
+
+    private final VMFunction function;
+    private final Chunk chunk;
+    // Compiler of the function this one is declared in, null for the script
+    private final Compiler enclosing;
+    // Open scopes of this and every enclosing compiler, innermost last, shared by all of them
+    private final List<LocalScope> scopes;
+    private final Captures captures;
+    private final ErrorReporter errors;
+    // Stack slots the locals of the open scopes of this function take, slot 0 holds the callee
+    private int localCount = 0;
+    // Slots of all the blocks of this function with locals, counted for the stack a call needs
+    private int blockSlots = 0;
+    // Upvalues of the function, each one a slot of the enclosing function or an upvalue of its own, see CLOSURE
+    private final List<Boolean> upvalueIsLocal = new ArrayList<>();
+    private final List<Integer> upvalueIndexes = new ArrayList<>();
+    private int line = 1;
+    private boolean hadError = false;
+
+    /**
+     * Scope the resolver counted depths over, its slots are the stack slots of its function from base on
+     */
+    private static final class LocalScope {
+        final Statement declaration;
+        final Compiler compiler;
+        final int base;
+
+        LocalScope(Statement declaration, Compiler compiler, int base) {
+            this.declaration = declaration;
+            this.compiler = compiler;
+            this.base = base;
+        }
+    }
+
+    private Compiler(VMFunction function, Compiler enclosing, List<LocalScope> scopes, Captures captures,
+                     ErrorReporter errors) {
+        this.function = function;
+        this.chunk = function.chunk;
+        this.enclosing = enclosing;
+        this.scopes = scopes;
+        this.captures = captures;
+        this.errors = errors;
+    }
+
+    /**
+     * Compiles the top level statements into the function that is executed first
+     *
+     * @param statements resolved statements of the program
+     * @param errors     reporter of the bytecode limits the program exceeds
+     * @return compiled script or null if the program does not fit in the bytecode limits
+     */
+    static VMFunction compile(List<Statement> statements, ErrorReporter errors) {
+        Compiler compiler = new Compiler(new VMFunction("script", 0, 0), null, new ArrayList<>(),
+                Captures.of(statements), errors);
+        for (Statement statement : statements) {
+            compiler.compile(statement);
+        }
+        compiler.endFunction();
+        return compiler.hadError ? null : compiler.function;
+    }
+
+    @Override
+    public Void visitAssignExpression(Expression.Assign expression) {
+        compile(expression.value);
+        line = expression.name.line;
+        if (expression.depth != Resolver.GLOBAL) {
+            emitLocal(expression.depth, expression.slot, OpCode.SET_LOCAL, OpCode.SET_BOXED, OpCode.SET_UPVALUE);
+        } else {
+            emitByte(OpCode.SET_GLOBAL);
+            emitGlobal(expression.name, expression.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        compile(expression.leftExpression);
+        compile(expression.rightExpression);
+        line = expression.operator.line;
+        switch (expression.operator.tokenType) {
+            case GREATER:
+                emitByte(OpCode.GREATER);
+                break;
+            case GREATER_EQUAL:
+                emitByte(OpCode.GREATER_EQUAL);
+                break;
+            case LESS:
+                emitByte(OpCode.LESS);
+                break;
+            case LESS_EQUAL:
+                emitByte(OpCode.LESS_EQUAL);
+                break;
+            case MINUS:
+                emitByte(OpCode.SUBTRACT);
+                break;
+            case SLASH:
+                emitByte(OpCode.DIVIDE);
+                break;
+            case MODULO:
+                emitByte(OpCode.MODULO);
+                break;
+            case STAR:
+                emitByte(OpCode.MULTIPLY);
+                break;
+            case BANG_EQUAL:
+                emitByte(OpCode.NOT_EQUAL);
+                break;
+            case EQUAL_EQUAL:
+                emitByte(OpCode.EQUAL);
+                break;
+            case PLUS:
+                emitByte(OpCode.ADD);
+                break;
+            default:
+                // Interpreter evaluates unknown operators to nil after evaluating both operands
+                emitByte(OpCode.POP);
+                emitByte(OpCode.POP);
+                emitByte(OpCode.NIL);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(Expression.Call expression) {
+        compile(expression.callee);
+        for (Expression argument : expression.arguments) {
+            compile(argument);
+        }
+        line = expression.paren.line;
+        emitByte(OpCode.CALL);
+        emitByte((byte) expression.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        compile(expression.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        if (expression.value == null) {
+            emitByte(OpCode.NIL);
+        } else if (expression.value.equals(true)) {
+            emitByte(OpCode.TRUE);
+        } else if (expression.value.equals(false)) {
+            emitByte(OpCode.FALSE);
+        } else {
+            emitByte(OpCode.CONSTANT);
+            emitShort(makeConstant(expression.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(Expression.Logical expression) {
+        compile(expression.leftExpression);
+        line = expression.operator.line;
+        switch (expression.operator.tokenType) {
+            case AND: {
+                int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+                emitByte(OpCode.POP);
+                compile(expression.rightExpression);
+                patchJump(endJump);
+                break;
+            }
+            case OR: {
+                int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+                int endJump = emitJump(OpCode.JUMP);
+                patchJump(elseJump);
+                emitByte(OpCode.POP);
+                compile(expression.rightExpression);
+                patchJump(endJump);
+                break;
+            }
+            default:
+                emitByte(OpCode.POP);
+                compile(expression.rightExpression);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        compile(expression.rightExpression);
+        line = expression.operator.line;
+        switch (expression.operator.tokenType) {
+            case BANG:
+                emitByte(OpCode.NOT);
+                break;
+            case MINUS:
+                emitByte(OpCode.NEGATE);
+                break;
+            default:
+                emitByte(OpCode.POP);
+                emitByte(OpCode.NIL);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Expression.Variable expression) {
+        line = expression.name.line;
+        if (expression.depth != Resolver.GLOBAL) {
+            emitLocal(expression.depth, expression.slot, OpCode.GET_LOCAL, OpCode.GET_BOXED, OpCode.GET_UPVALUE);
+        } else {
+            emitByte(OpCode.GET_GLOBAL);
+            emitGlobal(expression.name, expression.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Statement.Block statement) {
+        // Blocks without declarations have no scope of their own, see Resolver
+        if (statement.slotCount == 0) {
+            for (Statement inner : statement.statements) {
+                compile(inner);
+            }
+            return null;
+        }
+
+        emitByte(OpCode.PUSH_SCOPE);
+        emitShort(statement.slotCount);
+        blockSlots += statement.slotCount;
+        beginScope(statement, statement.slotCount);
+        for (Statement inner : statement.statements) {
+            compile(inner);
+        }
+        endScope(statement.slotCount);
+        emitByte(OpCode.POP_SCOPE);
+        emitShort(statement.slotCount);
+        return null;
+    }
+
+    @Override
+    public Void visitCompleteExpressionStatement(Statement.CompleteExpression statement) {
+        if (statement.expression instanceof Expression.Assign) {
+            Expression.Assign assign = (Expression.Assign) statement.expression;
+            if (assign.depth != Resolver.GLOBAL && scope(assign.depth).compiler == this) {
+                // Nothing uses the value of the assignment, a local of this function takes it right off the stack
+                compile(assign.value);
+                line = assign.name.line;
+                emitLocal(assign.depth, assign.slot, OpCode.DEFINE_LOCAL, OpCode.DEFINE_BOXED, OpCode.SET_UPVALUE);
+                return null;
+            }
+        }
+        compile(statement.expression);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(Statement.Function statement) {
+        line = statement.name.line;
+        VMFunction declared = new VMFunction(statement.name.lexeme(), statement.params.size(), statement.slotCount);
+        Compiler compiler = new Compiler(declared, this, scopes, captures, errors);
+        compiler.line = line;
+        // The arguments are in the first slots already and the VM gives the other locals theirs when it calls
+        compiler.beginScope(statement, statement.slotCount);
+        for (Statement inner : statement.body) {
+            compiler.compile(inner);
+        }
+        compiler.endFunction();
+        compiler.endScope(statement.slotCount);
+        hadError |= compiler.hadError;
+
+        emitByte(OpCode.CLOSURE);
+        emitShort(makeConstant(declared));
+        int upvalueCount = compiler.upvalueIndexes.size();
+        if (upvalueCount > MAX_OPERAND) error("Too many variables captured by one function.");
+        emitShort(upvalueCount & MAX_OPERAND);
+        for (int i = 0; i < upvalueCount; i++) {
+            emitByte((byte) (compiler.upvalueIsLocal.get(i) ? 1 : 0));
+            emitShort(compiler.upvalueIndexes.get(i));
+        }
+        defineVariable(statement.name, statement.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Statement.If statement) {
+        compile(statement.condition);
+        int thenJump = emitJump(OpCode.POP_JUMP_IF_FALSE);
+        compile(statement.thenBranch);
+        if (statement.elseBranch == null) {
+            patchJump(thenJump);
+            return null;
+        }
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        compile(statement.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Statement.Print statement) {
+        compile(statement.expression);
+        emitByte(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Statement.Return statement) {
+        line = statement.keyword.line;
+        if (statement.tailCall) {
+            Expression.Call call = (Expression.Call) statement.value;
+            compile(call.callee);
+            for (Expression argument : call.arguments) {
+                compile(argument);
+            }
+            line = call.paren.line;
+            emitByte(OpCode.TAIL_CALL);
+            emitByte((byte) call.arguments.size());
+            // The instruction returns as well
+            return null;
+        }
+
+        if (statement.value != null) {
+            compile(statement.value);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+        emitByte(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Statement.Var statement) {
+        if (statement.initializer != null) {
+            compile(statement.initializer);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+        line = statement.name.line;
+        defineVariable(statement.name, statement.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Statement.While statement) {
+        int loopStart = chunk.count;
+        compile(statement.condition);
+
+        int exitJump = emitJump(OpCode.POP_JUMP_IF_FALSE);
+        compile(statement.body);
+        // The jump back counts as a step of the loop, a limit it goes past is reported on the line of the loop
+        line = statement.keyword.line;
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        return null;
+    }
+
+    private void compile(Statement statement) {
+        statement.accept(this);
+    }
+
+    private void compile(Expression expression) {
+        expression.accept(this);
+    }
+
+    private void defineVariable(Token name, int slot) {
+        if (slot == Resolver.GLOBAL) {
+            emitByte(OpCode.DEFINE_GLOBAL);
+            emitShort(nameConstant(name));
+        } else {
+            // A declaration always goes into the innermost scope
+            LocalScope scope = scopes.get(scopes.size() - 1);
+            emitByte(captures.isCaptured(scope.declaration, slot) ? OpCode.DEFINE_BOXED : OpCode.DEFINE_LOCAL);
+            emitShort(scope.base + slot);
+        }
+    }
+
+    /**
+     * Opens the scope of a function or block, the locals it declares take the next slotCount stack slots of this
+     * function and the ones a closure captures are boxed right away
+     */
+    private void beginScope(Statement declaration, int slotCount) {
+        LocalScope scope = new LocalScope(declaration, this, localCount + 1);
+        scopes.add(scope);
+        localCount += slotCount;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (captures.isCaptured(declaration, slot)) {
+                emitByte(OpCode.BOX);
+                emitShort(scope.base + slot);
+            }
+        }
+    }
+
+    private void endScope(int slotCount) {
+        scopes.remove(scopes.size() - 1);
+        localCount -= slotCount;
+    }
+
+    /**
+     * Emits the access to a local variable, by its slot on the stack if it is one of this function that no closure
+     * captures, through the upvalue in that slot if one does or through an upvalue of the closure if the variable
+     * belongs to an enclosing function
+     */
+    private void emitLocal(int depth, int slot, byte onStack, byte boxed, byte upvalue) {
+        LocalScope scope = scope(depth);
+        if (scope.compiler != this) {
+            emitByte(upvalue);
+            emitShort(upvalue(scope.compiler, scope.base + slot));
+        } else {
+            emitByte(captures.isCaptured(scope.declaration, slot) ? boxed : onStack);
+            emitShort(scope.base + slot);
+        }
+    }
+
+    /**
+     * @param depth depth the resolver gave an access to a local variable
+     * @return scope the variable is declared in
+     */
+    private LocalScope scope(int depth) {
+        return scopes.get(scopes.size() - 1 - depth);
+    }
+
+    /**
+     * @param owner compiler of the function the variable is a local of
+     * @param slot  stack slot of the variable in that function
+     * @return index of the upvalue of this function that holds the variable
+     */
+    private int upvalue(Compiler owner, int slot) {
+        boolean isLocal = enclosing == owner;
+        int index = isLocal ? slot : enclosing.upvalue(owner, slot);
+        for (int i = 0; i < upvalueIndexes.size(); i++) {
+            if (upvalueIsLocal.get(i) == isLocal && upvalueIndexes.get(i) == index) return i;
+        }
+        upvalueIsLocal.add(isLocal);
+        upvalueIndexes.add(index);
+        return upvalueIndexes.size() - 1;
+    }
+
+    /**
+     * Operands of an access to a global, its name and its index, see {@link simpal.interpreter.GlobalNames}, indexes
+     * from {@link #SHARED_GLOBAL_INDEX} on share it and the VM looks those globals up by name every time
+     */
+    private void emitGlobal(Token name, int index) {
+        emitShort(nameConstant(name));
+        emitShort(Math.min(index, SHARED_GLOBAL_INDEX));
+    }
+
+    private int nameConstant(Token name) {
+        return makeConstant(name.lexeme());
+    }
+
+    private int makeConstant(Object value) {
+        int index = chunk.addConstant(value);
+        if (index > MAX_OPERAND) {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private void emitByte(byte value) {
+        chunk.write(value, line);
+    }
+
+    private void emitShort(int value) {
+        if (value > MAX_OPERAND) {
+            error("Operand does not fit in bytecode.");
+        }
+        emitByte((byte) ((value >> 8) & 0xFF));
+        emitByte((byte) (value & 0xFF));
+    }
+
+    /**
+     * Ends the function with a return of nil and works out the stack a call of it needs, its locals, the locals of
+     * its blocks and a slot for every byte of code at most, as no other instruction pushes more than one value
+     */
+    private void endFunction() {
+        emitByte(OpCode.NIL);
+        emitByte(OpCode.RETURN);
+        function.maxStack = 1 + function.slotCount + blockSlots + chunk.count;
+    }
+
+    /**
+     * Emits a jump with a placeholder offset which is filled in by {@link #patchJump(int)}
+     *
+     * @param instruction jump instruction to be emitted
+     * @return offset of the placeholder operand
+     */
+    private int emitJump(byte instruction) {
+        emitByte(instruction);
+        emitByte((byte) 0xFF);
+        emitByte((byte) 0xFF);
+        return chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        // -2 to adjust for the bytes of the jump offset itself
+        int jump = chunk.count - offset - 2;
+        if (jump > MAX_OPERAND) {
+            error("Too much code to jump over.");
+        }
+        chunk.code[offset] = (byte) ((jump >> 8) & 0xFF);
+        chunk.code[offset + 1] = (byte) (jump & 0xFF);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitByte(OpCode.LOOP);
+        int offset = chunk.count - loopStart + 2;
+        if (offset > MAX_OPERAND) {
+            error("Loop body too large.");
+        }
+        emitShort(offset & MAX_OPERAND);
+    }
+
+    private void error(String message) {
+        errors.error(line, message);
+        hadError = true;
+    }
+}
@@ -0,0 +1,117 @@
+package simpal.vm;
+
+/**
+ * Instruction set of the {@link VM}, every instruction is one byte followed by its operands
+ * ( operands are unsigned 16-bit big endian values unless stated otherwise )
+ */
+final class OpCode {
+    /**
+     * CONSTANT index : pushes the constant at index of the constant pool
+     */
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    /**
+     * GET_LOCAL slot : pushes the value of the local variable at slot, slots count from the callee of the running
+     * call on the stack
+     */
+    static final byte GET_LOCAL = 5;
+    /**
+     * SET_LOCAL slot : stores top of the stack in the slot, the value stays on the stack
+     */
+    static final byte SET_LOCAL = 6;
+    /**
+     * DEFINE_LOCAL slot : pops top of the stack into the slot
+     */
+    static final byte DEFINE_LOCAL = 7;
+    /**
+     * GET_GLOBAL name index, SET_GLOBAL name index, DEFINE_GLOBAL name : same as the local ones but by name in the
+     * global table, the VM keeps the cell of a global it looked up at its index
+     */
+    static final byte GET_GLOBAL = 8;
+    static final byte SET_GLOBAL = 9;
+    static final byte DEFINE_GLOBAL = 10;
+
+    static final byte EQUAL = 11;
+    static final byte NOT_EQUAL = 12;
+    static final byte GREATER = 13;
+    static final byte GREATER_EQUAL = 14;
+    static final byte LESS = 15;
+    static final byte LESS_EQUAL = 16;
+    static final byte ADD = 17;
+    static final byte SUBTRACT = 18;
+    static final byte MULTIPLY = 19;
+    static final byte DIVIDE = 20;
+    static final byte MODULO = 21;
+    static final byte NOT = 22;
+    static final byte NEGATE = 23;
+
+    static final byte PRINT = 24;
+
+    /**
+     * JUMP offset : moves forward by offset bytes
+     */
+    static final byte JUMP = 25;
+    /**
+     * JUMP_IF_FALSE offset : moves forward by offset bytes if top of the stack is falsey, does not pop it
+     */
+    static final byte JUMP_IF_FALSE = 26;
+    /**
+     * LOOP offset : moves backward by offset bytes
+     */
+    static final byte LOOP = 27;
+
+    /**
+     * CALL argumentCount : argument count is a single byte, callee and arguments are on the stack
+     */
+    static final byte CALL = 28;
+    /**
+     * CLOSURE index count : pushes a closure of the function constant at index, followed by count pairs of a single
+     * byte that is 1 for the upvalue in a slot of the running call or 0 for one of its own upvalues, and the index of
+     * that slot or upvalue
+     */
+    static final byte CLOSURE = 29;
+    static final byte RETURN = 30;
+
+    /**
+     * PUSH_SCOPE size : pushes nil for each of the size slots of the locals a block declares, POP_SCOPE size : drops
+     * them when the block ends
+     */
+    static final byte PUSH_SCOPE = 31;
+    static final byte POP_SCOPE = 32;
+
+    /**
+     * TAIL_CALL argumentCount : like CALL followed by RETURN, a function written in SimPal takes over the frame of
+     * the returning function instead of getting a new one
+     */
+    static final byte TAIL_CALL = 33;
+
+    /**
+     * BOX slot : moves the value in the slot of a local variable that a closure captures into an upvalue kept in
+     * the slot instead, it is done when the scope of the variable begins so closures declared before the variable
+     * is defined share it too
+     */
+    static final byte BOX = 34;
+    /**
+     * GET_BOXED slot, SET_BOXED slot, DEFINE_BOXED slot : same as the local ones for a variable kept in an upvalue
+     */
+    static final byte GET_BOXED = 35;
+    static final byte SET_BOXED = 36;
+    static final byte DEFINE_BOXED = 37;
+    /**
+     * GET_UPVALUE index, SET_UPVALUE index : access to a variable the running closure captured
+     */
+    static final byte GET_UPVALUE = 38;
+    static final byte SET_UPVALUE = 39;
+
+    /**
+     * POP_JUMP_IF_FALSE offset : pops top of the stack and moves forward by offset bytes if it is falsey
+     */
+    static final byte POP_JUMP_IF_FALSE = 40;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,13 @@
+package simpal.vm;
+
+/**
+ * Local variable that a closure refers to, its stack slot holds this box so the variable outlives the call that
+ * declared it and every closure shares it with that call
+ */
+final class Upvalue {
+    Object value;
+
+    Upvalue(Object value) {
+        this.value = value;
+    }
+}
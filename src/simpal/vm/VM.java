@@ -0,0 +1,612 @@
+package simpal.vm;
+
+import simpal.errors.DivideByZeroError;
+import simpal.errors.ErrorReporter;
+import simpal.errors.SimPalRuntimeError;
+import simpal.functions.Clock;
+import simpal.functions.SimPalCallable;
+import simpal.interpreter.ExecutionBudget;
+import simpal.interpreter.ExecutionLimits;
+import simpal.interpreter.GlobalCell;
+import simpal.interpreter.GlobalCells;
+import simpal.lang.Statement;
+import simpal.output.OutputSink;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stack based virtual machine, an alternative to {@link simpal.interpreter.Interpreter} that executes the resolved
+ * program after compiling it to bytecode with {@link Compiler}
+ */
+public class VM {
+    private static final int FRAMES_INITIAL = 64;
+    // Calls that may be running at the same time before the program stops with a stack overflow
+    private static final int FRAMES_MAX = 1 << 16;
+    private static final int STACK_INITIAL = 256;
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+    // Stands in the stack for a number, the number itself is kept unboxed at the same index of numbers
+    private static final Object NUMBER = new Object();
+
+    private final Map<String, GlobalCell> globals = new HashMap<>();
+    private CallFrame[] frames = new CallFrame[FRAMES_INITIAL];
+    private int frameCount = 0;
+    private Object[] stack = new Object[STACK_INITIAL];
+    private double[] numbers = new double[STACK_INITIAL];
+    private int stackTop = 0;
+    private final OutputSink outputSink;
+    private final ErrorReporter errors;
+    private final ExecutionBudget budget;
+    private final int maxCallDepth;
+
+    /**
+     * Activation of a function, where it is in its bytecode and where its slots begin on the stack
+     */
+    private static final class CallFrame {
+        VMClosure closure;
+        int ip;
+        // Stack index of the callee, its locals follow it and everything above them belongs to this call too
+        int stackBase;
+    }
+
+    /**
+     * @param outputSink destination of print statements
+     * @param errors     reporter of compiling errors and of the runtime error that stops a program
+     */
+    public VM(OutputSink outputSink, ErrorReporter errors) {
+        this(outputSink, errors, ExecutionLimits.NONE);
+    }
+
+    /**
+     * @param outputSink destination of print statements
+     * @param errors     reporter of compiling errors and of the runtime error that stops a program
+     * @param limits     limits every run of a program is given
+     */
+    public VM(OutputSink outputSink, ErrorReporter errors, ExecutionLimits limits) {
+        this.outputSink = outputSink;
+        this.errors = errors;
+        this.budget = new ExecutionBudget(limits);
+        this.maxCallDepth = budget.maxCallDepth();
+        defineGlobal("clock", new Clock());
+    }
+
+    /**
+     * Compiles and runs the resolved statements, reporting any runtime error like the tree walking interpreter does
+     *
+     * @param statements resolved statements of the program
+     */
+    public void interpret(List<Statement> statements) {
+        VMProgram program = VMProgram.compile(statements, errors);
+        if (program != null) interpret(program);
+    }
+
+    /**
+     * Runs a program that was compiled before, see {@link VMProgram}
+     *
+     * @param program compiled program
+     */
+    public void interpret(VMProgram program) {
+        budget.reset();
+        try {
+            VMClosure main = new VMClosure(program.script, null, new GlobalCells());
+            stack[stackTop++] = main;
+            callClosure(main, 0);
+            run();
+        } catch (SimPalRuntimeError simPalRuntimeError) {
+            // Output printed before the error has to appear before it
+            outputSink.flush();
+            errors.runtimeError(simPalRuntimeError);
+        } finally {
+            // A run that did not return from its script leaves values anywhere on the stack and its calls unfinished,
+            // none of it may stay reachable from the VM
+            if (frameCount != 0) {
+                Arrays.fill(stack, null);
+                for (int i = 0; i < frameCount; i++) {
+                    frames[i].closure = null;
+                }
+                frameCount = 0;
+            }
+            stackTop = 0;
+        }
+    }
+
+    // A tail call that cannot reuse its frame falls through into the return that ends it
+    @SuppressWarnings("fallthrough")
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.stackBase;
+        // The stack and its top are kept here while the loop runs and handed back to the fields around calls, every
+        // call makes sure the stack has room for all its function pushes, see VMFunction
+        Object[] stack = this.stack;
+        double[] numbers = this.numbers;
+        int top = stackTop;
+
+        try {
+            for (; ; ) {
+                byte instruction = code[ip++];
+                switch (instruction) {
+                    case OpCode.CONSTANT: {
+                        put(stack, numbers, top++, constants[readShort(code, ip)]);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.NIL:
+                        top++;
+                        break;
+                    case OpCode.TRUE:
+                        stack[top++] = Boolean.TRUE;
+                        break;
+                    case OpCode.FALSE:
+                        stack[top++] = Boolean.FALSE;
+                        break;
+                    case OpCode.POP:
+                        stack[--top] = null;
+                        break;
+                    case OpCode.GET_LOCAL: {
+                        int slot = base + readShort(code, ip);
+                        ip += 2;
+                        stack[top] = stack[slot];
+                        numbers[top++] = numbers[slot];
+                        break;
+                    }
+                    case OpCode.SET_LOCAL: {
+                        int slot = base + readShort(code, ip);
+                        ip += 2;
+                        stack[slot] = stack[top - 1];
+                        numbers[slot] = numbers[top - 1];
+                        break;
+                    }
+                    case OpCode.DEFINE_LOCAL: {
+                        int slot = base + readShort(code, ip);
+                        ip += 2;
+                        stack[slot] = stack[--top];
+                        numbers[slot] = numbers[top];
+                        stack[top] = null;
+                        break;
+                    }
+                    case OpCode.BOX: {
+                        int slot = base + readShort(code, ip);
+                        ip += 2;
+                        stack[slot] = new Upvalue(value(stack, numbers, slot));
+                        break;
+                    }
+                    case OpCode.GET_BOXED: {
+                        put(stack, numbers, top++, ((Upvalue) stack[base + readShort(code, ip)]).value);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.SET_BOXED: {
+                        ((Upvalue) stack[base + readShort(code, ip)]).value = value(stack, numbers, top - 1);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.DEFINE_BOXED: {
+                        ((Upvalue) stack[base + readShort(code, ip)]).value = value(stack, numbers, --top);
+                        stack[top] = null;
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        put(stack, numbers, top++, frame.closure.upvalues[readShort(code, ip)].value);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        frame.closure.upvalues[readShort(code, ip)].value = value(stack, numbers, top - 1);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.GET_GLOBAL: {
+                        int name = readShort(code, ip);
+                        int index = readShort(code, ip + 2);
+                        ip += 4;
+                        GlobalCell cell = frame.closure.globalCells.get(index);
+                        if (cell == null) cell = globalCell(frame, ip, name, index);
+                        put(stack, numbers, top++, cell.value);
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        int name = readShort(code, ip);
+                        int index = readShort(code, ip + 2);
+                        ip += 4;
+                        GlobalCell cell = frame.closure.globalCells.get(index);
+                        if (cell == null) cell = globalCell(frame, ip, name, index);
+                        cell.value = value(stack, numbers, top - 1);
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        defineGlobal(name, value(stack, numbers, --top));
+                        stack[top] = null;
+                        break;
+                    }
+                    case OpCode.EQUAL: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = isEqual(numbers[top - 1], numbers[top]);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = !isEqual(numbers[top - 1], numbers[top]);
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = numbers[top - 1] > numbers[top];
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = numbers[top - 1] >= numbers[top];
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = numbers[top - 1] < numbers[top];
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        stack[top - 1] = numbers[top - 1] <= numbers[top];
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object right = stack[top - 1];
+                        Object left = stack[top - 2];
+                        if (left == NUMBER && right == NUMBER) {
+                            stack[--top] = null;
+                            numbers[top - 1] += numbers[top];
+                        } else if (left instanceof String && right instanceof String) {
+                            budget.allocateString(((String) left).length() + ((String) right).length(),
+                                    line(frame, ip));
+                            stack[--top] = null;
+                            stack[top - 1] = (String) left + (String) right;
+                        } else {
+                            throw error(frame, ip, "Operands must be two numbers or two strings.");
+                        }
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        numbers[top - 1] -= numbers[top];
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        stack[--top] = null;
+                        numbers[top - 1] *= numbers[top];
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        if (numbers[top - 1] == 0) {
+                            throw new DivideByZeroError("Division by zero is not possible.");
+                        }
+                        stack[--top] = null;
+                        numbers[top - 1] /= numbers[top];
+                        break;
+                    }
+                    case OpCode.MODULO: {
+                        if (stack[top - 1] != NUMBER || stack[top - 2] != NUMBER) throw numbersExpected(frame, ip);
+                        if (numbers[top - 1] == 0) {
+                            throw new DivideByZeroError("Remainder when any number is divided by zero is not possible.");
+                        }
+                        stack[--top] = null;
+                        numbers[top - 1] %= numbers[top];
+                        break;
+                    }
+                    case OpCode.NOT:
+                        stack[top - 1] = !isTruthy(stack[top - 1]);
+                        break;
+                    case OpCode.NEGATE: {
+                        if (stack[top - 1] != NUMBER) {
+                            throw error(frame, ip, "Operand must be a number.");
+                        }
+                        numbers[top - 1] = -numbers[top - 1];
+                        break;
+                    }
+                    case OpCode.PRINT:
+                        print(value(stack, numbers, --top));
+                        stack[top] = null;
+                        break;
+                    case OpCode.JUMP: {
+                        int offset = readShort(code, ip);
+                        ip += 2 + offset;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_FALSE: {
+                        int offset = readShort(code, ip);
+                        ip += 2;
+                        if (!isTruthy(stack[top - 1])) ip += offset;
+                        break;
+                    }
+                    case OpCode.POP_JUMP_IF_FALSE: {
+                        int offset = readShort(code, ip);
+                        ip += 2;
+                        if (!isTruthy(stack[--top])) ip += offset;
+                        stack[top] = null;
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        int offset = readShort(code, ip);
+                        ip += 2 - offset;
+                        if (budget.step()) budget.check(line(frame, ip + offset));
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int argumentCount = code[ip++] & 0xFF;
+                        frame.ip = ip;
+                        stackTop = top;
+                        callValue(frame, argumentCount);
+                        stack = this.stack;
+                        numbers = this.numbers;
+                        top = stackTop;
+                        if (frames[frameCount - 1] != frame) {
+                            frame = frames[frameCount - 1];
+                            code = frame.closure.function.chunk.code;
+                            constants = frame.closure.function.chunk.constants;
+                            ip = frame.ip;
+                            base = frame.stackBase;
+                        }
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        VMFunction function = (VMFunction) constants[readShort(code, ip)];
+                        Upvalue[] upvalues = new Upvalue[readShort(code, ip + 2)];
+                        ip += 4;
+                        for (int i = 0; i < upvalues.length; i++) {
+                            int index = readShort(code, ip + 1);
+                            upvalues[i] = code[ip] != 0 ? (Upvalue) stack[base + index] : frame.closure.upvalues[index];
+                            ip += 3;
+                        }
+                        stack[top++] = new VMClosure(function, upvalues, frame.closure.globalCells);
+                        break;
+                    }
+                    case OpCode.TAIL_CALL: {
+                        int argumentCount = code[ip++] & 0xFF;
+                        Object callee = stack[top - argumentCount - 1];
+                        if (callee instanceof VMClosure && ((VMClosure) callee).function.arity == argumentCount) {
+                            // The callee and its arguments move down to replace the returning call in the same frame
+                            VMClosure closure = (VMClosure) callee;
+                            if (budget.step()) budget.check(line(frame, ip));
+                            System.arraycopy(stack, top - argumentCount - 1, stack, base, argumentCount + 1);
+                            System.arraycopy(numbers, top - argumentCount - 1, numbers, base, argumentCount + 1);
+                            Arrays.fill(stack, base + argumentCount + 1, top, null);
+                            frame.closure = closure;
+                            stackTop = base + argumentCount + 1;
+                            reserveStack(closure.function, base);
+                            stack = this.stack;
+                            numbers = this.numbers;
+                            top = stackTop;
+
+                            code = closure.function.chunk.code;
+                            constants = closure.function.chunk.constants;
+                            ip = 0;
+                            break;
+                        }
+
+                        // Anything else is called as usual, only a native function gets past it and its result is
+                        // returned
+                        frame.ip = ip;
+                        stackTop = top;
+                        callValue(frame, argumentCount);
+                        stack = this.stack;
+                        numbers = this.numbers;
+                        top = stackTop;
+                    }
+                    // fall through
+                    case OpCode.RETURN: {
+                        Object result = stack[top - 1];
+                        double number = numbers[top - 1];
+                        frameCount--;
+                        Arrays.fill(stack, base, top, null);
+                        top = base;
+                        frame.closure = null;
+                        if (frameCount == 0) return;
+
+                        stack[top] = result;
+                        numbers[top++] = number;
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        base = frame.stackBase;
+                        break;
+                    }
+                    case OpCode.PUSH_SCOPE: {
+                        // Slots above the top are always nil already
+                        top += readShort(code, ip);
+                        ip += 2;
+                        break;
+                    }
+                    case OpCode.POP_SCOPE: {
+                        int size = readShort(code, ip);
+                        ip += 2;
+                        Arrays.fill(stack, top - size, top, null);
+                        top -= size;
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + instruction);
+                }
+            }
+        } finally {
+            stackTop = top;
+        }
+    }
+
+    /**
+     * Calls the callee sitting below the arguments on the stack, functions written in SimPal get a new call frame
+     * while native functions are run right away and their result replaces the callee and arguments
+     */
+    private void callValue(CallFrame frame, int argumentCount) {
+        Object callee = peek(argumentCount);
+        if (callee instanceof VMClosure) {
+            VMClosure closure = (VMClosure) callee;
+            if (argumentCount != closure.function.arity) {
+                throw error(frame, frame.ip, "Expected " + closure.function.arity +
+                        " arguments but got " + argumentCount + ".");
+            }
+            if (budget.step()) budget.check(line(frame, frame.ip));
+            if (frameCount > maxCallDepth) throw budget.callDepthExceeded(line(frame, frame.ip));
+            if (frameCount == FRAMES_MAX) throw error(frame, frame.ip, "Stack overflow.");
+            callClosure(closure, argumentCount);
+            return;
+        }
+
+        if (!(callee instanceof SimPalCallable)) {
+            throw error(frame, frame.ip, "Can only call functions and classes.");
+        }
+
+        SimPalCallable function = (SimPalCallable) callee;
+        if (argumentCount != function.arity()) {
+            throw error(frame, frame.ip, "Expected " + function.arity() +
+                    " arguments but got " + argumentCount + ".");
+        }
+
+        Object[] arguments = argumentCount == 0 ? NO_ARGUMENTS : new Object[argumentCount];
+        for (int i = 0; i < argumentCount; i++) {
+            arguments[i] = value(stack, numbers, stackTop - argumentCount + i);
+        }
+        // Native functions do not need the tree walking interpreter
+        Object result = function.call(null, arguments);
+        Arrays.fill(stack, stackTop - argumentCount - 1, stackTop, null);
+        stackTop -= argumentCount + 1;
+        put(stack, numbers, stackTop++, result);
+    }
+
+    private void callClosure(VMClosure closure, int argumentCount) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.stackBase = stackTop - argumentCount - 1;
+        reserveStack(closure.function, frame.stackBase);
+    }
+
+    /**
+     * Makes room on the stack for all that a call of the function starting at base pushes and puts the top right
+     * above its locals, the ones that follow the arguments are nil like every slot above the top
+     */
+    private void reserveStack(VMFunction function, int base) {
+        int end = base + function.maxStack;
+        if (end > stack.length) {
+            int length = Math.max(end, stack.length * 2);
+            stack = Arrays.copyOf(stack, length);
+            numbers = Arrays.copyOf(numbers, length);
+        }
+        stackTop = base + 1 + function.slotCount;
+    }
+
+    private static int readShort(byte[] code, int offset) {
+        return ((code[offset] & 0xFF) << 8) | (code[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Puts a value into a slot of the stack, a number goes into the numbers unboxed
+     */
+    private static void put(Object[] stack, double[] numbers, int slot, Object value) {
+        if (value instanceof Double) {
+            stack[slot] = NUMBER;
+            numbers[slot] = (double) value;
+        } else {
+            stack[slot] = value;
+        }
+    }
+
+    /**
+     * @return value in a slot of the stack, a number boxed
+     */
+    private static Object value(Object[] stack, double[] numbers, int slot) {
+        Object value = stack[slot];
+        return value == NUMBER ? (Object) numbers[slot] : value;
+    }
+
+    private Object peek(int distance) {
+        return stack[stackTop - 1 - distance];
+    }
+
+    private SimPalRuntimeError numbersExpected(CallFrame frame, int ip) {
+        return error(frame, ip, "Operands must be numbers.");
+    }
+
+    /**
+     * Looks up the global named by a constant of the running chunk and keeps its cell at the index of the global for
+     * the next instruction that uses it, see {@link Compiler#emitGlobal} for the index that is never kept
+     */
+    private GlobalCell globalCell(CallFrame frame, int ip, int name, int index) {
+        Chunk chunk = frame.closure.function.chunk;
+        GlobalCell cell = globals.get((String) chunk.constants[name]);
+        if (cell == null) throw error(frame, ip, "Undefined variable '" + chunk.constants[name] + "'.");
+        if (index != Compiler.SHARED_GLOBAL_INDEX) frame.closure.globalCells.put(index, cell);
+        return cell;
+    }
+
+    private void defineGlobal(String name, Object value) {
+        GlobalCell cell = globals.get(name);
+        if (cell != null) {
+            cell.value = value;
+        } else {
+            globals.put(name, new GlobalCell(name, value));
+        }
+    }
+
+    private SimPalRuntimeError error(CallFrame frame, int ip, String message) {
+        return new SimPalRuntimeError(line(frame, ip), message);
+    }
+
+    /**
+     * Source line of the instruction that ends right before ip
+     */
+    private static int line(CallFrame frame, int ip) {
+        return frame.closure.function.chunk.getLine(ip - 1);
+    }
+
+    private void print(Object value) {
+        outputSink.println(stringify(value));
+    }
+
+    private String stringify(Object object) {
+        if (object == null) return "nil";
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+        return object.toString();
+    }
+
+    // Equality of numbers as Double.equals has it, which the tree walking interpreter uses
+    private static boolean isEqual(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    private boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean) object;
+        return true;
+    }
+}
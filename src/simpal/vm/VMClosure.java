@@ -0,0 +1,24 @@
+package simpal.vm;
+
+import simpal.interpreter.GlobalCells;
+
+/**
+ * Runtime function value, a compiled function together with the variables it captured from the functions it was
+ * declared in and the cells of the globals of the run that declared it
+ */
+final class VMClosure {
+    final VMFunction function;
+    final Upvalue[] upvalues;
+    final GlobalCells globalCells;
+
+    VMClosure(VMFunction function, Upvalue[] upvalues, GlobalCells globalCells) {
+        this.function = function;
+        this.upvalues = upvalues;
+        this.globalCells = globalCells;
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
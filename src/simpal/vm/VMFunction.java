@@ -0,0 +1,24 @@
+package simpal.vm;
+
+/**
+ * Compiled form of a function declaration, shared by every closure created from it
+ */
+final class VMFunction {
+    final String name;
+    final int arity;
+    final int slotCount;
+    final Chunk chunk = new Chunk();
+    // Stack slots a call needs at most from its callee on, set once the function is compiled
+    int maxStack;
+
+    VMFunction(String name, int arity, int slotCount) {
+        this.name = name;
+        this.arity = arity;
+        this.slotCount = slotCount;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,30 @@
+package simpal.vm;
+
+import simpal.errors.ErrorReporter;
+import simpal.lang.Statement;
+
+import java.util.List;
+
+/**
+ * Bytecode of a whole program, compiled once and run by any number of {@link VM}s, also at the same time. Nothing a
+ * run changes is kept in it.
+ */
+public final class VMProgram {
+    final VMFunction script;
+
+    private VMProgram(VMFunction script) {
+        this.script = script;
+    }
+
+    /**
+     * Compiles the resolved statements
+     *
+     * @param statements resolved statements of the program
+     * @param errors     reporter of the bytecode limits the program exceeds
+     * @return compiled program or null if the program does not fit in the bytecode limits
+     */
+    public static VMProgram compile(List<Statement> statements, ErrorReporter errors) {
+        VMFunction script = Compiler.compile(statements, errors);
+        return script != null ? new VMProgram(script) : null;
+    }
+}
@@ -0,0 +1,230 @@
+package tool;
+
+import simpal.CompiledProgram;
+import simpal.SimPalContext;
+import simpal.SimPalEngine;
+import simpal.errors.ErrorReporter;
+import simpal.interpreter.ExecutionLimits;
+import simpal.interpreter.Resolver;
+import simpal.lang.Statement;
+import simpal.output.ConsoleSink;
+import simpal.parser.Parser;
+import simpal.scanner.Scanner;
+import simpal.token.Token;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures every phase of running a SimPal program on a fixed corpus of programs, scanning, parsing and resolving on
+ * their own, then compiling and running through {@link SimPalEngine} on each backend, so the optimized tree and the
+ * bytecode are what gets measured. Time and bytes allocated are reported per phase so a change can be checked against
+ * the numbers of the commit before it. Each program is run a second time with execution limits it never reaches, to
+ * show what checking them costs.
+ */
+public class Benchmark {
+    private static final int DEFAULT_WARMUP = 5;
+    private static final int DEFAULT_ITERATIONS = 10;
+    private static final ExecutionLimits UNREACHED_LIMITS =
+            new ExecutionLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Duration.ofHours(1), Long.MAX_VALUE);
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        if (args.length > 2) {
+            System.err.println("Usage: benchmark [iterations] [warmup iterations]");
+            System.exit(64);
+        }
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WARMUP;
+
+        PrintStream console = System.out;
+        console.printf("%-14s %-13s %12s %14s%n", "program", "phase", "ms/op", "bytes/op");
+        for (Map.Entry<String, String> program : corpus().entrySet()) {
+            List<Result> results = measure(program.getValue(), iterations, warmup);
+            for (Result result : results) {
+                console.printf("%-14s %-13s %12.3f %14d%n", program.getKey(), result.phase,
+                        result.nanos / 1e6 / iterations, result.bytes / iterations);
+            }
+        }
+    }
+
+    private static class Result {
+        final String phase;
+        long nanos;
+        long bytes;
+
+        Result(String phase) {
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * Runs the program through all phases, each phase works on a fresh copy of the output of the one before and every
+     * run gets a fresh context so nothing is shared between iterations, output of print statements is discarded
+     */
+    private static List<Result> measure(String source, int iterations, int warmup) {
+        Result scan = new Result("scan");
+        Result parse = new Result("parse");
+        Result resolve = new Result("resolve");
+        List<Result> results = new ArrayList<>(List.of(scan, parse, resolve));
+        List<Backend> backends = new ArrayList<>();
+        for (SimPalEngine.Backend backend : SimPalEngine.Backend.values()) {
+            Backend measured = new Backend(backend);
+            backends.add(measured);
+            results.addAll(List.of(measured.compile, measured.run, measured.limited));
+        }
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ErrorReporter errors = new ErrorReporter(System.err);
+        try {
+            for (int i = 0; i < warmup + iterations; i++) {
+                boolean record = i >= warmup;
+
+                long start = startPhase();
+                List<Token> tokens = new Scanner(source, errors).scanTokens();
+                endPhase(scan, start, record);
+
+                start = startPhase();
+                List<Statement> statements = new Parser(tokens, errors).parse();
+                endPhase(parse, start, record);
+
+                start = startPhase();
+                new Resolver(errors).resolve(statements);
+                endPhase(resolve, start, record);
+
+                for (Backend backend : backends) {
+                    backend.measure(source, errors, record);
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+        return results;
+    }
+
+    /**
+     * Phases measured through the engine of one backend, compiling covers the whole pipeline from the source on
+     */
+    private static class Backend {
+        final SimPalEngine engine;
+        final SimPalEngine limitedEngine;
+        final Result compile;
+        final Result run;
+        final Result limited;
+
+        Backend(SimPalEngine.Backend backend) {
+            String name = backend.name().toLowerCase();
+            engine = new SimPalEngine(backend, true, null);
+            limitedEngine = new SimPalEngine(backend, true, null, UNREACHED_LIMITS);
+            compile = new Result(name + "-compile");
+            run = new Result(name + "-run");
+            limited = new Result(name + "-limited");
+        }
+
+        void measure(String source, ErrorReporter errors, boolean record) {
+            long start = startPhase();
+            CompiledProgram program = engine.compile(source, errors);
+            endPhase(compile, start, record);
+            run(engine, program, run, errors, record);
+
+            run(limitedEngine, limitedEngine.compile(source, errors), limited, errors, record);
+        }
+
+        private static void run(SimPalEngine engine, CompiledProgram program, Result result, ErrorReporter errors,
+                                boolean record) {
+            SimPalContext context = engine.newContext(new ConsoleSink(System.out), errors);
+            long start = startPhase();
+            context.run(program);
+            endPhase(result, start, record);
+        }
+    }
+
+    private static long allocatedAtStart;
+
+    private static long startPhase() {
+        allocatedAtStart = threads.getCurrentThreadAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    private static void endPhase(Result result, long start, boolean record) {
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - allocatedAtStart;
+        if (record) {
+            result.nanos += nanos;
+            result.bytes += bytes;
+        }
+    }
+
+    /**
+     * Programs representative of what SimPal code looks like, the last one is large to stress the front end
+     */
+    private static Map<String, String> corpus() {
+        Map<String, String> corpus = new LinkedHashMap<>();
+        corpus.put("fib", """
+                fun fib(n) {
+                  if (n <= 1) return n;
+                  return fib(n - 2) + fib(n - 1);
+                }
+                print fib(22);
+                """);
+        corpus.put("loops", """
+                var sum = 0;
+                for (var i = 0; i < 300; i = i + 1) {
+                  for (var j = 0; j < 300; j = j + 1) {
+                    sum = sum + i * j % 7;
+                  }
+                }
+                print sum;
+                """);
+        corpus.put("strings", """
+                var text = "";
+                for (var i = 0; i < 2000; i = i + 1) {
+                  text = text + "ab";
+                }
+                print text;
+                """);
+        corpus.put("closures", """
+                fun counter() {
+                  var count = 0;
+                  fun increment() {
+                    count = count + 1;
+                    return count;
+                  }
+                  return increment;
+                }
+                var total = 0;
+                for (var i = 0; i < 3000; i = i + 1) {
+                  var next = counter();
+                  next();
+                  total = total + next();
+                }
+                print total;
+                """);
+        corpus.put("generated", generated(2000));
+        return corpus;
+    }
+
+    private static String generated(int functions) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < functions; i++) {
+            lines.add("fun f" + i + "(a, b) {");
+            lines.add("  var c = a * " + i + " + b / 2;");
+            lines.add("  if (c > " + i + " and !(a < b)) { c = c - 1; } else { c = c + 1; }");
+            lines.add("  while (c > 100) c = c / 2;");
+            lines.add("  return c; // " + "\"comment\"");
+            lines.add("}");
+            lines.add("var v" + i + " = f" + i + "(" + i + ", 3.5);");
+        }
+        lines.add("print \"done\";");
+        return String.join("\n", lines) + "\n";
+    }
+}
@@ -13,47 +13,62 @@ public class GenerateAST {
             System.exit(65);
         }
         String outputDirectory = args[0];
-        defineAST(outputDirectory, "Expression", Arrays.asList(
-                "Assign   : Token name, Expression value",
-                "Binary   : Expression leftExpression, Token operator, Expression rightExpression",
+        defineAST(outputDirectory, "Expression", List.of(), Arrays.asList(
+                "Assign   : Token name, Expression value | int depth, int slot",
+                "Binary   : Expression leftExpression, Token operator, Expression rightExpression | boolean numeric",
                 "Call     : Expression callee, Token paren, List<Expression> arguments",
                 "Grouping : Expression expression",
                 "Literal  : Object value",
                 "Logical  : Expression leftExpression, Token operator, Expression rightExpression",
-                "Unary    : Token operator, Expression rightExpression",
-                "Variable : Token name"
+                "Unary    : Token operator, Expression rightExpression | boolean numeric",
+                "Variable : Token name | int depth, int slot"
         ));
 
-        defineAST(outputDirectory, "Statement", Arrays.asList(
-                "Block      : List<Statement> statements",
+        defineAST(outputDirectory, "Statement", List.of("int line"), Arrays.asList(
+                "Block      : List<Statement> statements | int slotCount, boolean captured",
                 "CompleteExpression : Expression expression",
                 "Function   : Token name, List<Token> params," +
-                        " List<Statement> body",
+                        " List<Statement> body | int slot, int slotCount, boolean captured",
                 "If         : Expression condition, Statement thenBranch," +
                         " Statement elseBranch",
                 "Print      : Expression expression",
-                "Return     : Token keyword, Expression value",
-                "Var        : Token name, Expression initializer",
-                "While      : Expression condition, Statement body"
+                "Return     : Token keyword, Expression value | boolean tailCall",
+                "Var        : Token name, Expression initializer | int slot",
+                "While      : Token keyword, Expression condition, Statement body"
         ));
     }
 
-    private static void defineAST(String outputDirectory, String baseName, List<String> types) throws IOException {
+    /**
+     * Writes the base class and its node classes, base fields are mutable fields every node has, set after the node
+     * is created
+     */
+    private static void defineAST(String outputDirectory, String baseName, List<String> baseFields,
+                                  List<String> types) throws IOException {
         String path = outputDirectory + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
 
-        writer.println("package SimPal;");
+        writer.println("package simpal.lang;");
+        writer.println();
+        writer.println("import simpal.token.Token;");
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
         writer.println("public abstract class " + baseName + " {");
+        for (String field : baseFields) {
+            writer.println("  public " + field + ";");
+        }
 
         defineVisitor(writer, baseName, types);
 
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String resolvedFields = null;
+            if (fields.contains("|")) {
+                resolvedFields = fields.split("\\|")[1].trim();
+                fields = fields.split("\\|")[0].trim();
+            }
+            defineType(writer, baseName, className, fields, resolvedFields);
         }
 
         writer.println();
@@ -63,7 +78,12 @@ public class GenerateAST {
         writer.close();
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    /**
+     * Writes one node class, fields before '|' are final constructor parameters while the ones after it are left
+     * mutable so that the {@link simpal.interpreter.Resolver} can annotate the node once parsing is done
+     */
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   String resolvedFieldList) {
         writer.println("  public static class " + className + " extends " +
                 baseName + " {");
 
@@ -92,6 +112,11 @@ public class GenerateAST {
         for (String field : fields) {
             writer.println("    public final " + field + ";");
         }
+        if (resolvedFieldList != null) {
+            for (String field : resolvedFieldList.split(", ")) {
+                writer.println("    public " + field + ";");
+            }
+        }
 
         writer.println("  }");
     }